@@ -0,0 +1,67 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Schedules the analysis of files as they become ready, the most expensive ones first.
+ * <p>
+ * Each scheduled file submits a task to the executor, and that task analyzes the most expensive file ready
+ * at the time it runs instead of the file which submitted it. The longest analyses thus start as early as possible
+ * and do not run alone at the end, while the other threads are idle.
+ *
+ * @param <T> result of the analysis of a file
+ */
+public class AnalysisScheduler<T> {
+    private final PriorityBlockingQueue<ScheduledFile<T>> queue = new PriorityBlockingQueue<>(64,
+            Comparator.<ScheduledFile<T>>comparingLong(scheduledFile -> scheduledFile.cost).reversed()
+                    .thenComparing(scheduledFile -> scheduledFile.file.getFile()));
+    private final Executor executor;
+    private final ToLongFunction<JenkinsFile> costFunction;
+    private final Function<JenkinsFile, T> analysis;
+
+    /**
+     * @param costFunction estimated cost of the analysis of a file, in any unit
+     * @param analysis analysis of a file, run in the executor
+     */
+    public AnalysisScheduler(Executor executor, ToLongFunction<JenkinsFile> costFunction,
+                             Function<JenkinsFile, T> analysis) {
+        super();
+        this.executor = executor;
+        this.costFunction = costFunction;
+        this.analysis = analysis;
+    }
+
+    /**
+     * Schedules the analysis of a file, which is started once the files of higher cost already scheduled are started.
+     */
+    public CompletableFuture<T> schedule(JenkinsFile file) {
+        final ScheduledFile<T> scheduledFile = new ScheduledFile<>(file, costFunction.applyAsLong(file));
+        queue.add(scheduledFile);
+        executor.execute(() -> {
+            // there are as many tasks as scheduled files, so the queue is never empty here
+            final ScheduledFile<T> next = queue.poll();
+            try {
+                next.future.complete(analysis.apply(next.file));
+            } catch (Throwable t) {
+                next.future.completeExceptionally(t);
+            }
+        });
+        return scheduledFile.future;
+    }
+
+    private static class ScheduledFile<T> {
+        final JenkinsFile file;
+        final long cost;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        ScheduledFile(JenkinsFile file, long cost) {
+            this.file = file;
+            this.cost = cost;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the classes, methods and fields used by plugins, shared by the usages of all plugins
+ * so that each of them is stored once as a String, and as an int id in the usages.
+ * <p>
+ * Ids are given in order of first use, from 0. Thread safe.
+ */
+public class ApiDictionary {
+    private final Map<String, Integer> idsByName = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[1024];
+    private int size;
+
+    /**
+     * Returns the id of a class, method or field key, adding it to the dictionary if needed.
+     */
+    public int getId(String name) {
+        final Integer id = idsByName.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            final Integer existingId = idsByName.get(name);
+            if (existingId != null) {
+                return existingId;
+            }
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+            }
+            // the name is in the array before its id can be found by other threads
+            names[size] = name;
+            idsByName.put(name, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Returns the id of a class, method or field key, or -1 if it is not in the dictionary.
+     */
+    public int findId(String name) {
+        final Integer id = idsByName.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+}
@@ -0,0 +1,36 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes files through a temporary file in the same directory, moved over the file once complete,
+ * so that an interrupted run never leaves a truncated file behind.
+ */
+public class AtomicFiles {
+    public interface Content {
+        void writeTo(OutputStream output) throws IOException;
+    }
+
+    /**
+     * Replaces a file with the content, leaving the file as it was and no temporary file if writing fails.
+     */
+    public static void write(Path file, Content content) throws IOException {
+        final Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(tempFile)) {
+                content.writeTo(output);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    public static void write(Path file, byte[] bytes) throws IOException {
+        write(file, output -> output.write(bytes));
+    }
+}
@@ -0,0 +1,62 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Buffer into which class files are read before being parsed, reused by each thread so that an array is not
+ * allocated and grown for every class file.
+ * <p>
+ * The content is only valid until the next call to {@link #read(InputStream, long)} in the same thread.
+ */
+public class ClassFileBuffer {
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final ThreadLocal<ClassFileBuffer> BUFFERS = ThreadLocal.withInitial(ClassFileBuffer::new);
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int length;
+
+    private ClassFileBuffer() {
+        super();
+    }
+
+    /**
+     * Returns the buffer of the current thread.
+     */
+    public static ClassFileBuffer get() {
+        return BUFFERS.get();
+    }
+
+    /**
+     * Reads the whole input into the buffer.
+     *
+     * @param sizeHint size of the input if known, or -1
+     */
+    public void read(InputStream input, long sizeHint) throws IOException {
+        // one more byte than the expected size, so that the end of the input is reached without growing
+        if (sizeHint >= 0 && sizeHint < Integer.MAX_VALUE - 8 && sizeHint + 1 > bytes.length) {
+            bytes = new byte[(int) sizeHint + 1];
+        }
+        length = 0;
+        int count = input.read(bytes, 0, bytes.length);
+        while (count != -1) {
+            length += count;
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            count = input.read(bytes, length, bytes.length - length);
+        }
+    }
+
+    /**
+     * Returns the array of the buffer, of which only the first {@link #getLength()} bytes are the content.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getLength() {
+        return length;
+    }
+}
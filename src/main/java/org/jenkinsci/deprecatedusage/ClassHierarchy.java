@@ -0,0 +1,80 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable index of the superclass and interfaces of classes, shared by the scans of all plugins
+ * to resolve members inherited from classes which are not in the plugin itself.
+ * <p>
+ * Each class name is interned as an int id, in sorted order of names, and the supertypes of a class are
+ * an array of ids.
+ */
+public class ClassHierarchy {
+    public static final ClassHierarchy EMPTY = new ClassHierarchy(new HashMap<>());
+
+    private static final int[] NO_SUPER_TYPES = new int[0];
+
+    private final Map<String, Integer> idsByName;
+    private final String[] names;
+    private final int[][] superTypeIds;
+
+    /**
+     * @param superTypesByClass superclass and interfaces by class name
+     */
+    public ClassHierarchy(Map<String, String[]> superTypesByClass) {
+        super();
+        final Map<String, Integer> ids = new HashMap<>();
+        for (Map.Entry<String, String[]> entry : superTypesByClass.entrySet()) {
+            ids.put(entry.getKey(), null);
+            for (String superType : entry.getValue()) {
+                ids.put(superType, null);
+            }
+        }
+        this.names = ids.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        for (int id = 0; id < names.length; id++) {
+            ids.put(names[id], id);
+        }
+        this.idsByName = ids;
+        this.superTypeIds = new int[names.length][];
+        for (int id = 0; id < names.length; id++) {
+            final String[] superTypes = superTypesByClass.get(names[id]);
+            if (superTypes == null) {
+                superTypeIds[id] = NO_SUPER_TYPES;
+            } else {
+                superTypeIds[id] = new int[superTypes.length];
+                for (int i = 0; i < superTypes.length; i++) {
+                    superTypeIds[id][i] = ids.get(superTypes[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the id of a class, or -1 if the class is unknown.
+     */
+    public int getId(String className) {
+        final Integer id = idsByName.get(className);
+        return id == null ? -1 : id;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the ids of the superclass and interfaces of a class, which must not be modified.
+     */
+    public int[] getSuperTypeIds(int id) {
+        return superTypeIds[id];
+    }
+
+    /**
+     * Returns the number of classes, ids being from 0 to size - 1.
+     */
+    public int size() {
+        return names.length;
+    }
+}
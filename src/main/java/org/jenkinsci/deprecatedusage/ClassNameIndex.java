@@ -0,0 +1,108 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.util.Collection;
+
+/**
+ * Immutable set of class names, looked up directly with the modified UTF-8 bytes of a class file constant pool,
+ * so that no String is created for the entries which are not in the set.
+ * <p>
+ * Implemented as an open addressing hash table of the encoded names.
+ */
+public class ClassNameIndex {
+    private final String[] names;
+    private final byte[][] encodedNames;
+    private final int[] hashes;
+    private final int mask;
+
+    public ClassNameIndex(Collection<String> classNames) {
+        super();
+        int capacity = 2;
+        // load factor of at most 0.5 to keep probe sequences short
+        while (capacity < classNames.size() * 2) {
+            capacity <<= 1;
+        }
+        this.names = new String[capacity];
+        this.encodedNames = new byte[capacity][];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+        for (String className : classNames) {
+            final byte[] encodedName = encode(className);
+            final int hash = hash(encodedName, 0, encodedName.length);
+            int i = hash & mask;
+            while (names[i] != null && !names[i].equals(className)) {
+                i = (i + 1) & mask;
+            }
+            names[i] = className;
+            encodedNames[i] = encodedName;
+            hashes[i] = hash;
+        }
+    }
+
+    /**
+     * Returns the class name encoded by {@code length} bytes of {@code data} from {@code offset},
+     * or null if it is not in this set.
+     */
+    public String get(byte[] data, int offset, int length) {
+        final int hash = hash(data, offset, length);
+        for (int i = hash & mask; names[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && equals(encodedNames[i], data, offset, length)) {
+                return names[i];
+            }
+        }
+        return null;
+    }
+
+    private static boolean equals(byte[] encodedName, byte[] data, int offset, int length) {
+        if (encodedName.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (encodedName[i] != data[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] data, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + data[i];
+        }
+        // spreads the high bits, as HashMap does, since only the low bits select a slot
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Encodes a String as in CONSTANT_Utf8 entries of class files (see DataOutput.writeUTF).
+     */
+    static byte[] encode(String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            if (c >= 0x01 && c <= 0x7F) {
+                length++;
+            } else if (c <= 0x7FF) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        final byte[] bytes = new byte[length];
+        int j = 0;
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            if (c >= 0x01 && c <= 0x7F) {
+                bytes[j++] = (byte) c;
+            } else if (c <= 0x7FF) {
+                bytes[j++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+                bytes[j++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[j++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+                bytes[j++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[j++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return bytes;
+    }
+}
@@ -9,11 +9,22 @@ import org.objectweb.asm.Opcodes;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public class DeprecatedApi {
     // some plugins such as job-dsl has following code without using deprecated :
@@ -27,13 +38,21 @@ public class DeprecatedApi {
     public static final Set<String> IGNORED_DEPRECATED_CLASSES = new HashSet<>(
             Arrays.asList("hudson/model/Hudson$CloudList"));
 
-    private static final char SEPARATOR = '#';
-
-    private final Set<String> classes = new ConcurrentSkipListSet<>();
-    private final Set<String> methods = new ConcurrentSkipListSet<>();
-    private final Set<String> fields = new ConcurrentSkipListSet<>();
-    private final ClassVisitor classVisitor = new CalledClassVisitor();
+    static final char SEPARATOR = '#';
 
+    // concurrent sets while the cores are analyzed, then hash sets once frozen for the scan of plugins
+    private volatile Set<String> classes = new ConcurrentSkipListSet<>();
+    private volatile Set<String> methods = new ConcurrentSkipListSet<>();
+    private volatile Set<String> fields = new ConcurrentSkipListSet<>();
+    // once frozen, deprecated methods by class, then name, then descriptors, and deprecated fields by class, then name
+    private Map<String, Map<String, Set<String>>> methodsByClass;
+    private Map<String, Set<String>> fieldsByClass;
+    // superclass and interfaces of core classes, outside of java.* and javax.*
+    private final Map<String, String[]> superTypesByClass = new ConcurrentHashMap<>();
+    private ClassHierarchy classHierarchy;
+    private volatile boolean frozen;
+    private volatile ClassNameIndex classNameIndex;
+    private final ApiDictionary apiDictionary = new ApiDictionary();
 
     public static String getMethodKey(String className, String name, String desc) {
         return className + SEPARATOR + name + desc;
@@ -45,23 +64,60 @@ public class DeprecatedApi {
         // it is ignored since it would only clutter reports
     }
 
-    public void analyze(File coreFile) throws IOException {
+    /**
+     * Analyzes the classes of a core war, the classes of each jar in WEB-INF/lib/ being read by a separate task.
+     */
+    public void analyze(File coreFile, Executor executor) throws IOException {
+        checkNotFrozen();
         Options options = Options.get();
         if(options.onlyIncludeSpecified) {
             return;
         }
-        try (WarReader warReader = new WarReader(coreFile, false)) {
-            String fileName = warReader.nextClass();
-            while (fileName != null) {
-                analyze(warReader.getInputStream());
-                fileName = warReader.nextClass();
+        final List<CompletableFuture<Map<String, String[]>>> futures = new ArrayList<>();
+        futures.add(analyzeAsync(coreFile, fileName -> fileName.startsWith("WEB-INF/classes/"), executor));
+        for (String jarName : WarReader.getJarNames(coreFile)) {
+            futures.add(analyzeAsync(coreFile, jarName::equals, executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+        // merged in the order of the war, so that a class found in several jars always has the supertypes
+        // of the first one, as in the class loader of the war
+        for (CompletableFuture<Map<String, String[]>> future : futures) {
+            for (Map.Entry<String, String[]> entry : future.join().entrySet()) {
+                superTypesByClass.putIfAbsent(entry.getKey(), entry.getValue());
             }
         }
         classes.removeAll(IGNORED_DEPRECATED_CLASSES);
     }
 
-    private void analyze(InputStream input) throws IOException {
-        final ClassReader classReader = new ClassReader(input);
+    private CompletableFuture<Map<String, String[]>> analyzeAsync(File coreFile, Predicate<String> entryFilter,
+            Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            // ASM visitors are not thread safe, each task has its own
+            final CalledClassVisitor classVisitor = new CalledClassVisitor();
+            try (WarReader warReader = new WarReader(coreFile, false, entryFilter)) {
+                String fileName = warReader.nextClass();
+                while (fileName != null) {
+                    analyze(warReader.getInputStream(), warReader.getSize(), classVisitor);
+                    fileName = warReader.nextClass();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return classVisitor.foundSuperTypesByClass;
+        }, executor);
+    }
+
+    private void analyze(InputStream input, long size, ClassVisitor classVisitor) throws IOException {
+        final ClassFileBuffer buffer = ClassFileBuffer.get();
+        buffer.read(input, size);
+        final ClassReader classReader = new ClassReader(buffer.getBytes(), 0, buffer.getLength());
         classReader.accept(classVisitor,
                 ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
     }
@@ -78,8 +134,142 @@ public class DeprecatedApi {
         return fields;
     }
 
-    public void addClasses(List<String> additionalClasses) {
+    /**
+     * Returns the dictionary of the APIs used by the plugins analyzed against these deprecated APIs.
+     */
+    public ApiDictionary getApiDictionary() {
+        return apiDictionary;
+    }
+
+    /**
+     * Returns the deprecated classes indexed by their encoding in class files. The index is built on the first call,
+     * once the deprecated classes are known.
+     */
+    public ClassNameIndex getClassNameIndex() {
+        ClassNameIndex index = classNameIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = classNameIndex;
+                if (index == null) {
+                    index = new ClassNameIndex(classes);
+                    classNameIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    public synchronized void addClasses(List<String> additionalClasses) {
+        checkNotFrozen();
         classes.addAll(additionalClasses);
+        classNameIndex = null;
+    }
+
+    /**
+     * Adds the deprecated classes, methods and fields of another api, for example of another core version.
+     */
+    public synchronized void addAll(DeprecatedApi deprecatedApi) {
+        checkNotFrozen();
+        classes.addAll(deprecatedApi.getClasses());
+        methods.addAll(deprecatedApi.getMethods());
+        fields.addAll(deprecatedApi.getFields());
+        for (Map.Entry<String, String[]> entry : deprecatedApi.getSuperTypesByClass().entrySet()) {
+            // a class may have different supertypes in different core versions
+            superTypesByClass.merge(entry.getKey(), entry.getValue(), (superTypes, otherSuperTypes) ->
+                    Stream.concat(Arrays.stream(superTypes), Arrays.stream(otherSuperTypes)).distinct()
+                            .toArray(String[]::new));
+        }
+        classNameIndex = null;
+    }
+
+    /**
+     * Makes this api read-only, once all cores have been analyzed and before plugins are scanned.
+     * The deprecated classes, methods and fields are then kept in hash sets, for constant time lookups
+     * of each method and field instruction of the plugins.
+     */
+    public synchronized void freeze() {
+        if (frozen) {
+            return;
+        }
+        classes = Collections.unmodifiableSet(new HashSet<>(classes));
+        methods = Collections.unmodifiableSet(new HashSet<>(methods));
+        fields = Collections.unmodifiableSet(new HashSet<>(fields));
+        classNameIndex = new ClassNameIndex(classes);
+        classHierarchy = new ClassHierarchy(superTypesByClass);
+        superTypesByClass.clear();
+        methodsByClass = new HashMap<>();
+        for (String method : methods) {
+            final int separator = method.indexOf(SEPARATOR);
+            final int descStart = method.indexOf('(', separator);
+            methodsByClass.computeIfAbsent(method.substring(0, separator), key -> new HashMap<>())
+                    .computeIfAbsent(method.substring(separator + 1, descStart), key -> new HashSet<>())
+                    .add(method.substring(descStart));
+        }
+        fieldsByClass = new HashMap<>();
+        for (String field : fields) {
+            final int separator = field.indexOf(SEPARATOR);
+            fieldsByClass.computeIfAbsent(field.substring(0, separator), key -> new HashSet<>())
+                    .add(field.substring(separator + 1));
+        }
+        frozen = true;
+    }
+
+    /**
+     * Returns the superclass and interfaces by class, while this api is not frozen.
+     */
+    public Map<String, String[]> getSuperTypesByClass() {
+        return superTypesByClass;
+    }
+
+    /**
+     * Returns the hierarchy of core classes, built when this api is frozen.
+     */
+    public ClassHierarchy getClassHierarchy() {
+        if (!frozen) {
+            return new ClassHierarchy(superTypesByClass);
+        }
+        return classHierarchy;
+    }
+
+    public boolean isDeprecatedClass(String className) {
+        return classes.contains(className);
+    }
+
+    /**
+     * Returns true if the method is deprecated, without building its key once frozen.
+     */
+    public boolean isDeprecatedMethod(String className, String name, String desc) {
+        if (!frozen) {
+            return methods.contains(getMethodKey(className, name, desc));
+        }
+        final Map<String, Set<String>> methodsByName = methodsByClass.get(className);
+        if (methodsByName == null) {
+            return false;
+        }
+        final Set<String> descs = methodsByName.get(name);
+        return descs != null && descs.contains(desc);
+    }
+
+    /**
+     * Returns true if the field is deprecated, without building its key once frozen.
+     */
+    public boolean isDeprecatedField(String className, String name) {
+        if (!frozen) {
+            return fields.contains(getFieldKey(className, name, null));
+        }
+        final Set<String> names = fieldsByClass.get(className);
+        return names != null && names.contains(name);
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Deprecated APIs cannot be changed once frozen");
+        }
+    }
+
+    static boolean isJavaClass(String asmClassName) {
+        // if starts with java/ or javax/, then it's a class of core java
+        return asmClassName.startsWith("java/") || asmClassName.startsWith("javax/");
     }
 
     /**
@@ -89,6 +279,8 @@ public class DeprecatedApi {
         private static final int OPCODE_PUBLIC = Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED;
         private static final int OPCODE_DEPRECATED = Opcodes.ACC_DEPRECATED;
 
+        // supertypes of the classes read by this visitor, merged in a deterministic order once all are read
+        private final Map<String, String[]> foundSuperTypesByClass = new HashMap<>();
         private String currentClass;
 
         CalledClassVisitor() {
@@ -107,6 +299,7 @@ public class DeprecatedApi {
         public void visit(int version, int access, String name, String signature, String superName,
                 String[] interfaces) {
             // log(name + " extends " + superName + " {");
+            addSuperTypes(name, superName, interfaces);
             if (isPublic(access)) {
                 currentClass = name;
                 if (isDeprecated(access)) {
@@ -117,6 +310,24 @@ public class DeprecatedApi {
             }
         }
 
+        private void addSuperTypes(String name, String superName, String[] interfaces) {
+            final List<String> superTypes = new ArrayList<>();
+            // superClass may be null for java.lang.Object and module-info.class
+            if (superName != null && !isJavaClass(superName)) {
+                superTypes.add(superName);
+            }
+            if (interfaces != null) {
+                for (final String anInterface : interfaces) {
+                    if (!isJavaClass(anInterface)) {
+                        superTypes.add(anInterface);
+                    }
+                }
+            }
+            if (!superTypes.isEmpty()) {
+                foundSuperTypesByClass.putIfAbsent(name, superTypes.toArray(new String[0]));
+            }
+        }
+
         @Override
         public MethodVisitor visitMethod(int access, String name, String desc, String signature,
                 String[] exceptions) {
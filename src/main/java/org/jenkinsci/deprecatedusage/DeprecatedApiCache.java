@@ -0,0 +1,124 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the deprecated APIs extracted from each version of Jenkins core between runs, so that jenkins.war
+ * is not analyzed again when it did not change.
+ * <p>
+ * Each index file is named after the core version and digest, and contains the deprecated classes, methods
+ * and fields as gzipped lists of strings, followed by the superclass and interfaces of the core classes.
+ */
+public class DeprecatedApiCache {
+    private static final int MAGIC = 0x4A444150; // "JDAP"
+    // to be incremented when a change in the core analysis gives different results for the same war
+    private static final int FORMAT_VERSION = 2;
+
+    private final Path directory;
+
+    public DeprecatedApiCache(File cacheDirectory) {
+        super();
+        this.directory = cacheDirectory.toPath().resolve("core");
+    }
+
+    /**
+     * Returns the deprecated APIs previously extracted from this core file, or null if it has not been analyzed yet.
+     */
+    public DeprecatedApi load(JenkinsFile core) {
+        final Path file = getFile(core);
+        if (file == null || Files.notExists(file)) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new GZIPInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final DeprecatedApi deprecatedApi = new DeprecatedApi();
+            readStrings(input, deprecatedApi.getClasses());
+            readStrings(input, deprecatedApi.getMethods());
+            readStrings(input, deprecatedApi.getFields());
+            final int classCount = input.readInt();
+            for (int i = 0; i < classCount; i++) {
+                final String className = input.readUTF();
+                final String[] superTypes = new String[input.readUnsignedShort()];
+                for (int j = 0; j < superTypes.length; j++) {
+                    superTypes[j] = input.readUTF();
+                }
+                deprecatedApi.getSuperTypesByClass().put(className, superTypes);
+            }
+            return deprecatedApi;
+        } catch (IOException e) {
+            System.out.println("Ignoring cached deprecated APIs of " + core + " because " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Records the deprecated APIs extracted from this core file, so that it is not analyzed again by the next runs.
+     */
+    public void save(JenkinsFile core, DeprecatedApi deprecatedApi) {
+        final Path file = getFile(core);
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            AtomicFiles.write(file, fileOutput -> {
+                try (DataOutputStream output = new DataOutputStream(new GZIPOutputStream(
+                        new BufferedOutputStream(fileOutput)))) {
+                    output.writeInt(MAGIC);
+                    output.writeInt(FORMAT_VERSION);
+                    writeStrings(output, deprecatedApi.getClasses());
+                    writeStrings(output, deprecatedApi.getMethods());
+                    writeStrings(output, deprecatedApi.getFields());
+                    final Map<String, String[]> superTypesByClass = deprecatedApi.getSuperTypesByClass();
+                    output.writeInt(superTypesByClass.size());
+                    for (Map.Entry<String, String[]> entry : superTypesByClass.entrySet()) {
+                        output.writeUTF(entry.getKey());
+                        output.writeShort(entry.getValue().length);
+                        for (String superType : entry.getValue()) {
+                            output.writeUTF(superType);
+                        }
+                    }
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("Failed to cache deprecated APIs of " + core + " because " + e.toString());
+        }
+    }
+
+    private Path getFile(JenkinsFile core) {
+        // without digest, there is no way to know if the core file has changed
+        final String digest = core.getDigest();
+        if (digest == null) {
+            return null;
+        }
+        return directory.resolve(core.getName() + '-' + core.getVersion() + '-' + digest + ".idx");
+    }
+
+    private static void readStrings(DataInputStream input, Collection<String> strings) throws IOException {
+        final int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            strings.add(input.readUTF());
+        }
+    }
+
+    private static void writeStrings(DataOutputStream output, Collection<String> strings) throws IOException {
+        output.writeInt(strings.size());
+        for (String string : strings) {
+            output.writeUTF(string);
+        }
+    }
+}
@@ -26,7 +26,7 @@ public class DeprecatedUnusedApiReport extends Report {
                     continue;
                 }
                 for (DeprecatedUsage usage : usages) {
-                    if (usage.getClasses().contains(deprecatedClass)) {
+                    if (usage.usesClass(deprecatedClass)) {
                         continue CLASSES;
                     }
                 }
@@ -43,7 +43,7 @@ public class DeprecatedUnusedApiReport extends Report {
                     continue;
                 }
                 for (DeprecatedUsage usage : usages) {
-                    if (usage.getFields().contains(deprecatedField)) {
+                    if (usage.usesField(deprecatedField)) {
                         continue FIELDS;
                     }
                 }
@@ -60,7 +60,7 @@ public class DeprecatedUnusedApiReport extends Report {
                     continue;
                 }
                 for (DeprecatedUsage usage : usages) {
-                    if (usage.getMethods().contains(deprecatedMethod)) {
+                    if (usage.usesMethod(deprecatedMethod)) {
                         continue METHODS;
                     }
                 }
@@ -82,7 +82,7 @@ public class DeprecatedUnusedApiReport extends Report {
                     continue;
                 }
                 for (DeprecatedUsage usage : usages) {
-                    if (usage.getClasses().contains(deprecatedClass)) {
+                    if (usage.usesClass(deprecatedClass)) {
                         continue CLASSES;
                     }
                 }
@@ -99,7 +99,7 @@ public class DeprecatedUnusedApiReport extends Report {
                     continue;
                 }
                 for (DeprecatedUsage usage : usages) {
-                    if (usage.getFields().contains(deprecatedField)) {
+                    if (usage.usesField(deprecatedField)) {
                         continue FIELDS;
                     }
                 }
@@ -116,7 +116,7 @@ public class DeprecatedUnusedApiReport extends Report {
                     continue;
                 }
                 for (DeprecatedUsage usage : usages) {
-                    if (usage.getMethods().contains(deprecatedMethod)) {
+                    if (usage.usesMethod(deprecatedMethod)) {
                         continue METHODS;
                     }
                 }
@@ -3,17 +3,18 @@ package org.jenkinsci.deprecatedusage;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import org.apache.commons.io.IOUtils;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
@@ -25,22 +26,32 @@ public class DeprecatedUsage {
     // they are just wrappers and not real usage
     public static final Set<String> IGNORED_PLUGINS = new HashSet<>(
             Arrays.asList("python-wrapper.hpi"));
+    private static final int[] NO_IDS = new int[0];
 
     private final Plugin plugin;
     private final DeprecatedApi deprecatedApi;
     private final boolean includePluginLibraries;
 
-    private final Set<String> classes = new LinkedHashSet<>();
-    private final Set<String> methods = new LinkedHashSet<>();
-    private final Set<String> fields = new LinkedHashSet<>();
-    private final ClassVisitor indexerClassVisitor = new IndexerClassVisitor();
-    private final ClassVisitor classVisitor = new CallersClassVisitor();
-    private final Map<String, List<String>> superClassAndInterfacesByClass = new HashMap<>();
+    // ids in the dictionary of the deprecated APIs, shared by the usages of all plugins; the state of a scan
+    // is only kept until its references are resolved, so that the usages of all plugins stay small
+    private final ApiDictionary apiDictionary;
+    private final IntSet classes = new IntSet();
+    private final IntSet methods = new IntSet();
+    private final IntSet fields = new IntSet();
+    // true if some classes could not be analyzed, so that the usages found are not complete
+    private boolean incomplete;
+    // keys of the members referenced through classes which are neither in the plugin nor in core, resolved
+    // through the classes of the other plugins once all plugins are scanned
+    private final IntSet unresolvedMethods = new IntSet();
+    private final IntSet unresolvedFields = new IntSet();
+    // supertypes of the classes of the plugin which other plugins can extend: class id, count, supertype ids...
+    private int[] superTypeIds = NO_IDS;
 
     public DeprecatedUsage(String pluginName, String pluginVersion, DeprecatedApi deprecatedApi, boolean includePluginLibraries) {
         super();
         this.plugin = new Plugin(pluginName, pluginVersion);
         this.deprecatedApi = deprecatedApi;
+        this.apiDictionary = deprecatedApi.getApiDictionary();
         this.includePluginLibraries = includePluginLibraries;
     }
 
@@ -48,37 +59,124 @@ public class DeprecatedUsage {
         if (IGNORED_PLUGINS.contains(pluginFile.getName())) {
             return;
         }
-        analyzeWithClassVisitor(pluginFile, indexerClassVisitor);
-        analyzeWithClassVisitor(pluginFile, classVisitor);
+        // each class is read only once: supertypes and member references are recorded while reading,
+        // and inherited deprecated members are resolved when all the classes of the plugin are known
+        final Scan scan = new Scan();
+        final List<String> jarNames = includePluginLibraries ? WarReader.getJarNames(pluginFile)
+                : Collections.emptyList();
+        if (jarNames.size() > 1) {
+            analyzeJarsInParallel(pluginFile, jarNames, scan);
+        } else {
+            scan.read(pluginFile, fileName -> true);
+        }
+        scan.resolveReferences();
+        classes.addAll(scan.foundClasses);
+        incomplete |= scan.incomplete;
+        superTypeIds = scan.getExportedSuperTypeIds();
+    }
+
+    /**
+     * Resolves the members referenced through the classes of other plugins, such as a deprecated method of core
+     * inherited through a class of a dependency, once the classes of all plugins are known.
+     */
+    public void resolveThroughPlugins(PluginClassHierarchy pluginClassHierarchy) {
+        if (unresolvedMethods.isEmpty() && unresolvedFields.isEmpty()) {
+            return;
+        }
+        final Scan scan = new Scan(pluginClassHierarchy);
+        for (int i = 0; i < unresolvedMethods.size(); i++) {
+            final String methodKey = apiDictionary.getName(unresolvedMethods.get(i));
+            final int separator = methodKey.indexOf(DeprecatedApi.SEPARATOR);
+            final int descStart = methodKey.indexOf('(', separator);
+            scan.methodCalled(methodKey.substring(0, separator), methodKey.substring(separator + 1, descStart),
+                    methodKey.substring(descStart));
+        }
+        for (int i = 0; i < unresolvedFields.size(); i++) {
+            final String fieldKey = apiDictionary.getName(unresolvedFields.get(i));
+            final int separator = fieldKey.indexOf(DeprecatedApi.SEPARATOR);
+            // the descriptor is not part of the key of a field
+            scan.fieldCalled(fieldKey.substring(0, separator), fieldKey.substring(separator + 1), null);
+        }
+    }
+
+    /**
+     * Reads WEB-INF/classes/ and each jar of WEB-INF/lib/ in a separate fork/join subtask, so that the idle threads
+     * of the pool can steal the jars of a large plugin. Each subtask records in its own scan, merged at the end.
+     */
+    private void analyzeJarsInParallel(File pluginFile, List<String> jarNames, Scan scan) throws IOException {
+        final List<Predicate<String>> entryFilters = new ArrayList<>();
+        entryFilters.add(fileName -> fileName.startsWith("WEB-INF/classes/"));
+        for (String jarName : jarNames) {
+            entryFilters.add(jarName::equals);
+        }
+        final List<ForkJoinTask<Scan>> tasks = new ArrayList<>();
+        for (Predicate<String> entryFilter : entryFilters) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                final Scan part = new Scan();
+                try {
+                    part.read(pluginFile, entryFilter);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return part;
+            }));
+        }
+        try {
+            ForkJoinTask.invokeAll(tasks);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // the hierarchy is merged in the order of the war, as a sequential scan would have recorded it
+        for (ForkJoinTask<Scan> task : tasks) {
+            scan.merge(task.join());
+        }
     }
 
-    
     public void analyzeWithClassVisitor(File pluginFile, ClassVisitor aClassVisitor)
             throws IOException {
+        if (!analyzeWithClassVisitor(pluginFile, aClassVisitor, fileName -> true, classes)) {
+            incomplete = true;
+        }
+    }
+
+    /**
+     * Returns false if some classes could not be analyzed.
+     *
+     * @param foundClasses where the deprecated classes found in the constant pools are added
+     */
+    private boolean analyzeWithClassVisitor(File pluginFile, ClassVisitor aClassVisitor, Predicate<String> entryFilter,
+            IntSet foundClasses) throws IOException {
+        boolean complete = true;
         // recent plugins package their classes as a jar file with the same name as the war file in
         // WEB-INF/lib/ while older plugins were packaging their classes in WEB-INF/classes/
-        try (WarReader warReader = new WarReader(pluginFile, !includePluginLibraries)) {
+        try (WarReader warReader = new WarReader(pluginFile, !includePluginLibraries, entryFilter)) {
             String fileName = warReader.nextClass();
             while (fileName != null) {
                 try {
                     @SuppressWarnings("resource") // handled by warReader.nextClass()
                     InputStream is = warReader.getInputStream();
-                    analyze(is, aClassVisitor);
+                    analyze(is, warReader.getSize(), aClassVisitor, foundClasses);
                 } catch (Exception e) {
+                    complete = false;
                     System.err.println("Failed to fully analyze " + pluginFile + ".  " + fileName + " not scanned due to -> ");
                     e.printStackTrace();
                 }
                 fileName = warReader.nextClass();
             }
         }
+        return complete;
     }
 
-    private static final ThreadLocal<char[]> bufs = ThreadLocal.withInitial(() -> new char[99999]);
-
-    private void analyze(InputStream input, ClassVisitor aClassVisitor) throws IOException {
-        byte[] data = IOUtils.toByteArray(input);
-        final ClassReader classReader = new ClassReader(data);
-        char[] buf = bufs.get();
+    private void analyze(InputStream input, long size, ClassVisitor aClassVisitor, IntSet foundClasses)
+            throws IOException {
+        // the class file is read into a buffer of the thread, which is reused for the next class
+        final ClassFileBuffer buffer = ClassFileBuffer.get();
+        buffer.read(input, size);
+        final byte[] data = buffer.getBytes();
+        final ClassReader classReader = new ClassReader(data, 0, buffer.getLength());
+        // deprecated class names are matched with the bytes of the constant pool without decoding them,
+        // a String is only created by the index when there is a match
+        final ClassNameIndex classNameIndex = deprecatedApi.getClassNameIndex();
         for (int i = 0; i < classReader.getItemCount(); i++) {
             int offset = classReader.getItem(i);
             if (offset == 0) {
@@ -87,75 +185,140 @@ public class DeprecatedUsage {
             int kind = data[offset - 1];
             if (kind == 1) {
                 int length = classReader.readUnsignedShort(offset);
-                // Adapted from ClassReader.readUtf, which is private:
-                int currentOffset = offset + 2;
-                int endOffset = currentOffset + length;
-                int strLength = 0;
-                while (currentOffset < endOffset) {
-                    int currentByte = data[currentOffset++];
-                    if ((currentByte & 0x80) == 0) {
-                        buf[strLength++] = (char) (currentByte & 0x7F);
-                    } else if ((currentByte & 0xE0) == 0xC0) {
-                        buf[strLength++] = (char) (((currentByte & 0x1F) << 6) + (data[currentOffset++] & 0x3F));
-                    } else {
-                        buf[strLength++] = (char) (((currentByte & 0xF) << 12) + ((data[currentOffset++] & 0x3F) << 6) + (data[currentOffset++] & 0x3F));
-                    }
+                int start = offset + 2;
+                String name = classNameIndex.get(data, start, length);
+                if (name == null && length > 2 && data[start] == 'L' && data[start + length - 1] == ';') {
+                    // descriptor of the class
+                    name = classNameIndex.get(data, start + 1, length - 2);
                 }
-                String s = new String(buf, 0, strLength);
-                if (deprecatedApi.getClasses().contains(s)) {
-                    classes.add(s);
-                } else if (s.length() > 2 && s.charAt(0) == 'L' && s.charAt(s.length() - 1) == ';') {
-                    String name = s.substring(1, s.length() - 1);
-                    if (deprecatedApi.getClasses().contains(name)) {
-                        classes.add(name);
-                    }
+                if (name != null) {
+                    foundClasses.add(apiDictionary.getId(name));
                 }
-                continue;
             }
         }
         classReader.accept(aClassVisitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
     }
 
+    /**
+     * Returns true if the reference was not already in the map.
+     */
+    private static boolean addReference(Map<String, Map<String, Set<String>>> references, String owner, String name,
+            String desc) {
+        return references.computeIfAbsent(owner, key -> new HashMap<>())
+                .computeIfAbsent(name, key -> new HashSet<>())
+                .add(desc);
+    }
+
+    private static void addReferences(Map<String, Map<String, Set<String>>> references,
+            Map<String, Map<String, Set<String>>> otherReferences) {
+        for (Map.Entry<String, Map<String, Set<String>>> byOwner : otherReferences.entrySet()) {
+            for (Map.Entry<String, Set<String>> byName : byOwner.getValue().entrySet()) {
+                references.computeIfAbsent(byOwner.getKey(), key -> new HashMap<>())
+                        .computeIfAbsent(byName.getKey(), key -> new HashSet<>())
+                        .addAll(byName.getValue());
+            }
+        }
+    }
+
     public Plugin getPlugin() { return plugin; }
 
     public Set<String> getClasses() {
-        return new TreeSet<>(classes);
+        return toNames(classes);
     }
 
     public Set<String> getMethods() {
-        return new TreeSet<>(methods);
+        return toNames(methods);
     }
 
     public Set<String> getFields() {
-        return new TreeSet<>(fields);
+        return toNames(fields);
     }
 
-    public boolean hasDeprecatedUsage() {
-        return !classes.isEmpty() || !methods.isEmpty() || !fields.isEmpty();
+    public boolean usesClass(String className) {
+        return contains(classes, className);
     }
 
-    void methodCalled(String className, String name, String desc) {
+    public boolean usesMethod(String methodKey) {
+        return contains(methods, methodKey);
+    }
 
-            if (!shouldAnalyze(className)) {
-                return;
-            }
-            if (deprecatedApi.getClasses().contains(className)) {
-                classes.add(className);
-            } else {
-                final String method = DeprecatedApi.getMethodKey(className, name, desc);
-                if (deprecatedApi.getMethods().contains(method) ||
-                        (Options.get().additionalMethodsFile != null &&
-                                Options.getAdditionalMethodNames().getOrDefault(className, Collections.emptySet()).contains(name))) {
-                    methods.add(method);
-                }
-                final List<String> superClassAndInterfaces = superClassAndInterfacesByClass
-                        .get(className);
-                if (superClassAndInterfaces != null) {
-                    for (final String superClassOrInterface : superClassAndInterfaces) {
-                        methodCalled(superClassOrInterface, name, desc);
-                    }
-                }
-            }
+    public boolean usesField(String fieldKey) {
+        return contains(fields, fieldKey);
+    }
+
+    private Set<String> toNames(IntSet ids) {
+        final Set<String> names = new TreeSet<>();
+        for (int i = 0; i < ids.size(); i++) {
+            names.add(apiDictionary.getName(ids.get(i)));
+        }
+        return names;
+    }
+
+    private boolean contains(IntSet ids, String name) {
+        final int id = apiDictionary.findId(name);
+        return id >= 0 && ids.contains(id);
+    }
+
+    /**
+     * Returns the ids of the used classes in the dictionary of the deprecated APIs, which must not be modified.
+     */
+    IntSet getClassIds() {
+        return classes;
+    }
+
+    IntSet getMethodIds() {
+        return methods;
+    }
+
+    IntSet getFieldIds() {
+        return fields;
+    }
+
+    IntSet getUnresolvedMethodIds() {
+        return unresolvedMethods;
+    }
+
+    IntSet getUnresolvedFieldIds() {
+        return unresolvedFields;
+    }
+
+    /**
+     * Returns the supertypes of the classes of the plugin which other plugins can extend, as a sequence of
+     * class id, count of supertypes and supertype ids, which must not be modified.
+     */
+    int[] getSuperTypeIds() {
+        return superTypeIds;
+    }
+
+    /**
+     * Adds usages found by a previous analysis of the same plugin, as ids in the dictionary of the deprecated APIs.
+     */
+    void addUsages(IntSet usedClasses, IntSet usedMethods, IntSet usedFields) {
+        classes.addAll(usedClasses);
+        methods.addAll(usedMethods);
+        fields.addAll(usedFields);
+    }
+
+    /**
+     * Adds the unresolved references and the supertypes found by a previous analysis of the same plugin.
+     *
+     * @see #getSuperTypeIds()
+     */
+    void addUnresolved(IntSet methodIds, IntSet fieldIds, int[] pluginSuperTypeIds) {
+        unresolvedMethods.addAll(methodIds);
+        unresolvedFields.addAll(fieldIds);
+        superTypeIds = pluginSuperTypeIds;
+    }
+
+    /**
+     * Returns true if some classes of the plugin could not be analyzed, and their usages are missing.
+     */
+    public boolean isIncomplete() {
+        return incomplete;
+    }
+
+    public boolean hasDeprecatedUsage() {
+        return !classes.isEmpty() || !methods.isEmpty() || !fields.isEmpty();
     }
 
     /**
@@ -174,16 +337,7 @@ public class DeprecatedUsage {
         // values, given the least surprise is most likely that if the user explicitly passed a file, s/he does want it to be analyzed
         // even if coming from java.*, javax.*, or not from Jenkins core classes itself
         Options options = Options.get();
-        if (options.additionalClassesFile != null &&
-                Options.getAdditionalClasses().stream().anyMatch(className::startsWith)) {
-            return true;
-        }
-        if (options.additionalMethodsFile != null &&
-                Options.getAdditionalMethodNames().keySet().stream().anyMatch(className::startsWith)) {
-            return true;
-        }
-        if (options.additionalFieldsFile != null &&
-                Options.getAdditionalFields().keySet().stream().anyMatch(className::startsWith)) {
+        if (Options.getAdditionalClassPrefixes().matches(className)) {
             return true;
         }
 
@@ -203,108 +357,251 @@ public class DeprecatedUsage {
         return true;
     }
 
-    void fieldCalled(String className, String name, String desc) {
-        // Calls to java and javax are ignored first
-        if (!isJavaClass(className)) {
-            if (deprecatedApi.getClasses().contains(className)) {
-                classes.add(className);
+    private static boolean isJavaClass(String asmClassName) {
+        return DeprecatedApi.isJavaClass(asmClassName);
+    }
+
+    /**
+     * State of the scan of a plugin, or of a part of it: dropped once the references are resolved.
+     */
+    private class Scan {
+        private final ClassVisitor classVisitor = new CallersClassVisitor();
+        // classes of the other plugins, only once all plugins are scanned
+        private final PluginClassHierarchy pluginClassHierarchy;
+        // deprecated classes found in the constant pools, added to the usages at the end of the scan
+        private final IntSet foundClasses = new IntSet();
+        private boolean incomplete;
+        // classes of the plugin, looked up before the classes of core
+        private final Map<String, List<String>> superClassAndInterfacesByClass = new HashMap<>();
+        private final Set<String> publicClasses = new HashSet<>();
+        private final ClassHierarchy classHierarchy = deprecatedApi.getClassHierarchy();
+        // member references collected while reading the classes, by owner, then name, then descriptors
+        private final Map<String, Map<String, Set<String>>> methodReferences = new HashMap<>();
+        private final Map<String, Map<String, Set<String>>> fieldReferences = new HashMap<>();
+        // members already resolved, in the same form
+        private final Map<String, Map<String, Set<String>>> resolvedMethods = new HashMap<>();
+        private final Map<String, Map<String, Set<String>>> resolvedFields = new HashMap<>();
+
+        Scan() {
+            this(null);
+        }
+
+        Scan(PluginClassHierarchy pluginClassHierarchy) {
+            super();
+            this.pluginClassHierarchy = pluginClassHierarchy;
+        }
+
+        void read(File pluginFile, Predicate<String> entryFilter) throws IOException {
+            if (!analyzeWithClassVisitor(pluginFile, classVisitor, entryFilter, foundClasses)) {
+                incomplete = true;
+            }
+        }
+
+        void merge(Scan part) {
+            foundClasses.addAll(part.foundClasses);
+            incomplete |= part.incomplete;
+            superClassAndInterfacesByClass.putAll(part.superClassAndInterfacesByClass);
+            publicClasses.addAll(part.publicClasses);
+            addReferences(methodReferences, part.methodReferences);
+            addReferences(fieldReferences, part.fieldReferences);
+        }
+
+        void resolveReferences() {
+            for (Map.Entry<String, Map<String, Set<String>>> byOwner : methodReferences.entrySet()) {
+                for (Map.Entry<String, Set<String>> byName : byOwner.getValue().entrySet()) {
+                    for (String desc : byName.getValue()) {
+                        methodCalled(byOwner.getKey(), byName.getKey(), desc);
+                    }
+                }
+            }
+            for (Map.Entry<String, Map<String, Set<String>>> byOwner : fieldReferences.entrySet()) {
+                for (Map.Entry<String, Set<String>> byName : byOwner.getValue().entrySet()) {
+                    for (String desc : byName.getValue()) {
+                        fieldCalled(byOwner.getKey(), byName.getKey(), desc);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the supertypes of the public classes of the plugin and of the classes they extend in the plugin,
+         * the only ones which other plugins can reach.
+         */
+        int[] getExportedSuperTypeIds() {
+            final Set<String> exportedClasses = new TreeSet<>();
+            final List<String> pending = new ArrayList<>(publicClasses);
+            while (!pending.isEmpty()) {
+                final String className = pending.remove(pending.size() - 1);
+                final List<String> superTypes = superClassAndInterfacesByClass.get(className);
+                if (superTypes != null && !superTypes.isEmpty() && exportedClasses.add(className)) {
+                    pending.addAll(superTypes);
+                }
+            }
+            int length = 0;
+            for (String className : exportedClasses) {
+                length += 2 + superClassAndInterfacesByClass.get(className).size();
+            }
+            final int[] ids = new int[length];
+            int index = 0;
+            for (String className : exportedClasses) {
+                final List<String> superTypes = superClassAndInterfacesByClass.get(className);
+                ids[index++] = apiDictionary.getId(className);
+                ids[index++] = superTypes.size();
+                for (String superType : superTypes) {
+                    ids[index++] = apiDictionary.getId(superType);
+                }
+            }
+            return ids;
+        }
+
+        void methodCalled(String className, String name, String desc) {
+            // a member reached again through another path of the hierarchy (or through a cycle of
+            // inconsistent classes) has already added what it can to the usages
+            if (!addReference(resolvedMethods, className, name, desc)) {
+                return;
+            }
+
+            if (!shouldAnalyze(className)) {
+                return;
+            }
+            if (deprecatedApi.isDeprecatedClass(className)) {
+                classes.add(apiDictionary.getId(className));
             } else {
-                final String field = DeprecatedApi.getFieldKey(className, name, desc);
-                if (deprecatedApi.getFields().contains(field) ||
-                        (Options.get().additionalFieldsFile != null &&
-                                Options.getAdditionalFields().getOrDefault(className, Collections.emptySet()).contains(name))) {
-                    fields.add(field);
+                // the key of the method is only built when it is used
+                if (deprecatedApi.isDeprecatedMethod(className, name, desc) ||
+                        (Options.get().additionalMethodsFile != null &&
+                                Options.getAdditionalMethodNames().getOrDefault(className, Collections.emptySet()).contains(name))) {
+                    methods.add(apiDictionary.getId(DeprecatedApi.getMethodKey(className, name, desc)));
                 }
                 final List<String> superClassAndInterfaces = superClassAndInterfacesByClass
                         .get(className);
                 if (superClassAndInterfaces != null) {
                     for (final String superClassOrInterface : superClassAndInterfaces) {
-                        fieldCalled(superClassOrInterface, name, desc);
+                        methodCalled(superClassOrInterface, name, desc);
+                    }
+                } else {
+                    final int classId = classHierarchy.getId(className);
+                    if (classId >= 0) {
+                        for (final int superTypeId : classHierarchy.getSuperTypeIds(classId)) {
+                            methodCalled(classHierarchy.getName(superTypeId), name, desc);
+                        }
+                    } else if (pluginClassHierarchy == null) {
+                        unresolvedMethods.add(apiDictionary.getId(DeprecatedApi.getMethodKey(className, name, desc)));
+                    } else {
+                        for (final int superTypeId : pluginClassHierarchy.getSuperTypeIds(apiDictionary.findId(className))) {
+                            methodCalled(apiDictionary.getName(superTypeId), name, desc);
+                        }
                     }
                 }
             }
         }
-    }
-
-    private static boolean isJavaClass(String asmClassName) {
-        // if starts with java/ or javax/, then it's a class of core java
-        return asmClassName.startsWith("java/") || asmClassName.startsWith("javax/");
-    }
 
-    /**
-     * Implements ASM ClassVisitor.
-     */
-    private class IndexerClassVisitor extends ClassVisitor {
-        IndexerClassVisitor() {
-            super(Opcodes.ASM9);
+        void fieldCalled(String className, String name, String desc) {
+            if (!addReference(resolvedFields, className, name, desc)) {
+                return;
+            }
+            // Calls to java and javax are ignored first
+            if (!isJavaClass(className)) {
+                if (deprecatedApi.isDeprecatedClass(className)) {
+                    classes.add(apiDictionary.getId(className));
+                } else {
+                    if (deprecatedApi.isDeprecatedField(className, name) ||
+                            (Options.get().additionalFieldsFile != null &&
+                                    Options.getAdditionalFields().getOrDefault(className, Collections.emptySet()).contains(name))) {
+                        fields.add(apiDictionary.getId(DeprecatedApi.getFieldKey(className, name, desc)));
+                    }
+                    final List<String> superClassAndInterfaces = superClassAndInterfacesByClass
+                            .get(className);
+                    if (superClassAndInterfaces != null) {
+                        for (final String superClassOrInterface : superClassAndInterfaces) {
+                            fieldCalled(superClassOrInterface, name, desc);
+                        }
+                    } else {
+                        final int classId = classHierarchy.getId(className);
+                        if (classId >= 0) {
+                            for (final int superTypeId : classHierarchy.getSuperTypeIds(classId)) {
+                                fieldCalled(classHierarchy.getName(superTypeId), name, desc);
+                            }
+                        } else if (pluginClassHierarchy == null) {
+                            unresolvedFields.add(apiDictionary.getId(DeprecatedApi.getFieldKey(className, name, desc)));
+                        } else {
+                            for (final int superTypeId : pluginClassHierarchy.getSuperTypeIds(apiDictionary.findId(className))) {
+                                fieldCalled(apiDictionary.getName(superTypeId), name, desc);
+                            }
+                        }
+                    }
+                }
+            }
         }
 
-        @Override
-        public void visit(int version, int access, String name, String signature, String superName,
-                String[] interfaces) {
-            // log(name + " extends " + superName + " {");
-            
-            final List<String> superClassAndInterfaces = new ArrayList<>();
-            // superClass may be null for java.lang.Object and module-info.class
-            // Object would have been filtered but we see lots of module-info classes
-            if (superName != null && !isJavaClass(superName)) {
-                superClassAndInterfaces.add(superName);
+        /**
+         * Implements ASM ClassVisitor.
+         */
+        private class CallersClassVisitor extends ClassVisitor {
+            CallersClassVisitor() {
+                super(Opcodes.ASM9);
             }
-            if (interfaces != null) {
-                for (final String anInterface : interfaces) {
-                    if (!isJavaClass(anInterface)) {
-                        superClassAndInterfaces.add(anInterface);
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName,
+                    String[] interfaces) {
+                // log(name + " extends " + superName + " {");
+
+                final List<String> superClassAndInterfaces = new ArrayList<>();
+                // superClass may be null for java.lang.Object and module-info.class
+                // Object would have been filtered but we see lots of module-info classes
+                if (superName != null && !isJavaClass(superName)) {
+                    superClassAndInterfaces.add(superName);
+                }
+                if (interfaces != null) {
+                    for (final String anInterface : interfaces) {
+                        if (!isJavaClass(anInterface)) {
+                            superClassAndInterfaces.add(anInterface);
+                        }
                     }
                 }
-            }
-            if (!superClassAndInterfaces.isEmpty()) {
+                // recorded even without supertypes, so that the class is known to be in the plugin
                 superClassAndInterfacesByClass.put(name, superClassAndInterfaces);
+                if ((access & Opcodes.ACC_PUBLIC) != 0) {
+                    publicClasses.add(name);
+                }
             }
-        }
-    }
 
-    /**
-     * Implements ASM ClassVisitor.
-     */
-    private class CallersClassVisitor extends ClassVisitor {
-        CallersClassVisitor() {
-            super(Opcodes.ASM9);
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+                    String[] exceptions) {
+                // asm javadoc says to return a new instance each time
+                return new CallersMethodVisitor();
+            }
         }
 
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String desc, String signature,
-                String[] exceptions) {
-            // asm javadoc says to return a new instance each time
-            return new CallersMethodVisitor();
-        }
-    }
-
-    /**
-     * Implements ASM MethodVisitor.
-     */
-    private class CallersMethodVisitor extends MethodVisitor {
-        CallersMethodVisitor() {
-            super(Opcodes.ASM9);
-        }
+        /**
+         * Implements ASM MethodVisitor.
+         */
+        private class CallersMethodVisitor extends MethodVisitor {
+            CallersMethodVisitor() {
+                super(Opcodes.ASM9);
+            }
 
-        @Deprecated
-        @Override
-        public void visitMethodInsn(int opcode, String owner, String name, String desc) {
-            // log("\t" + owner + " " + name + " " + desc);
-            methodCalled(owner, name, desc);
-        }
+            @Deprecated
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+                // log("\t" + owner + " " + name + " " + desc);
+                addReference(methodReferences, owner, name, desc);
+            }
 
-        @Override
-        public void visitMethodInsn(int opcode, String owner, String name, String desc,
-                boolean itf) {
-            // log("\t" + owner + " " + name + " " + desc);
-            methodCalled(owner, name, desc);
-        }
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String desc,
+                    boolean itf) {
+                // log("\t" + owner + " " + name + " " + desc);
+                addReference(methodReferences, owner, name, desc);
+            }
 
-        @Override
-        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
-            // log("\t" + owner + " " + name + " " + desc);
-            fieldCalled(owner, name, desc);
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+                // log("\t" + owner + " " + name + " " + desc);
+                addReference(fieldReferences, owner, name, desc);
+            }
         }
     }
 }
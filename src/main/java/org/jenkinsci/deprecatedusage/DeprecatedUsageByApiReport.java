@@ -40,7 +40,7 @@ public class DeprecatedUsageByApiReport extends Report {
             for (String className : deprecatedClassesUsed) {
                 SortedSet<String> usingPlugins = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
                 for (DeprecatedUsage usage : usages) {
-                    if (usage.getClasses().contains(className)) {
+                    if (usage.usesClass(className)) {
                         usingPlugins.add(usage.getPlugin().artifactId);
                     }
                 }
@@ -52,7 +52,7 @@ public class DeprecatedUsageByApiReport extends Report {
             for (String fieldName : deprecatedFieldsUsed) {
                 SortedSet<String> usingPlugins = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
                 for (DeprecatedUsage usage : usages) {
-                    if (usage.getFields().contains(fieldName)) {
+                    if (usage.usesField(fieldName)) {
                         usingPlugins.add(usage.getPlugin().artifactId);
                     }
                 }
@@ -64,7 +64,7 @@ public class DeprecatedUsageByApiReport extends Report {
             for (String methodName : deprecatedMethodsUsed) {
                 SortedSet<String> usingPlugins = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
                 for (DeprecatedUsage usage : usages) {
-                    if (usage.getMethods().contains(methodName)) {
+                    if (usage.usesMethod(methodName)) {
                         usingPlugins.add(usage.getPlugin().artifactId);
                     }
                 }
@@ -14,65 +14,105 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.DigestException;
-import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Downloads files from the update center.
+ * <p>
+ * Downloads block their thread for the whole transfer, so they run in threads of their own, as many as the maximum
+ * number of concurrent downloads, and not in the threads analyzing the files already downloaded.
+ * <p>
+ * A failed download is retried after an exponential backoff with jitter, waiting on a timer so that its download
+ * thread is free for other downloads in the meantime.
+ */
 public class Downloader {
-    private final ExecutorService executor;
-    private final Semaphore concurrentDownloadsPermit;
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 1000L;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000L;
+    private static final int MAX_RETRY_DELAY_SHIFT = 20;
 
-    public Downloader(ExecutorService executor, int maxConcurrentDownloads) {
-        this.executor = executor;
-        concurrentDownloadsPermit = new Semaphore(maxConcurrentDownloads);
+    private final ExecutorService downloadExecutor;
+    private final ScheduledExecutorService retryScheduler;
+    private final int maxRetries;
+
+    /**
+     * @param maxRetries number of times a download is retried after a transient failure
+     */
+    public Downloader(int maxConcurrentDownloads, int maxRetries) {
+        super();
+        this.maxRetries = maxRetries;
+        // idle connections to the update center mirror are kept alive to be reused by the next downloads,
+        // at most 5 per host by default
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(maxConcurrentDownloads));
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "download-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        downloadExecutor = Executors.newFixedThreadPool(maxConcurrentDownloads, threadFactory);
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "download-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    public Future<Collection<JenkinsFile>> synchronize(Collection<JenkinsFile> files) {
-        final Collection<JenkinsFile> synced = ConcurrentHashMap.newKeySet(files.size());
-        final CountDownLatch latch = new CountDownLatch(files.size());
-        for (JenkinsFile file : files) {
-            if (file.isFileSynchronized()) {
-                synced.add(file);
-                latch.countDown();
-            } else {
-                Path path = file.getFile().toPath();
-                Path parent = path.getParent();
-                if (Files.notExists(parent)) {
-                    try {
-                        Files.createDirectories(parent);
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
-                    }
+    /**
+     * Synchronizes a file, in the download threads.
+     *
+     * @return a future completed with the file once it is up to date and its digest checked, or with null
+     * if it could not be downloaded, the failure having been reported
+     */
+    public CompletableFuture<JenkinsFile> synchronize(JenkinsFile file) {
+        // files already downloaded are checked in parallel, their digests being computed again if they changed
+        return CompletableFuture.supplyAsync(file::isFileSynchronized, downloadExecutor).thenCompose(fileSynchronized -> {
+            if (fileSynchronized) {
+                return CompletableFuture.completedFuture(null);
+            }
+            Path path = file.getFile().toPath();
+            Path parent = path.getParent();
+            if (Files.notExists(parent)) {
+                try {
+                    Files.createDirectories(parent);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-                download(file).handle((success, failure) -> {
-                    if (failure != null) {
-                        // do not throw away the message!
-                        StringWriter sw = new StringWriter();
-                        PrintWriter pw = new PrintWriter(sw);
-                        pw.println("failure synching " + file.getName());
-                        pw.println(failure.getMessage());
-                        failure.printStackTrace(pw);
-                        pw.flush();
-                        System.err.println(sw.toString());
-                    } else {
-                        synced.add(file);
-                    }
-                    latch.countDown();
-                    return null;
-                });
             }
-        }
-        return executor.submit(() -> {
-            latch.await();
-            return synced;
+            return download(file);
+        }).handle((success, failure) -> {
+            if (failure != null) {
+                // do not throw away the message!
+                StringWriter sw = new StringWriter();
+                PrintWriter pw = new PrintWriter(sw);
+                pw.println("failure synching " + file.getName());
+                pw.println(failure.getMessage());
+                failure.printStackTrace(pw);
+                pw.flush();
+                System.err.println(sw.toString());
+                return null;
+            }
+            return file;
         });
     }
 
+    /**
+     * Stops the download threads, once the pending downloads are done.
+     */
+    public void shutdown() {
+        retryScheduler.shutdown();
+        downloadExecutor.shutdown();
+    }
+
     private CompletableFuture<Void> download(JenkinsFile file) {
         Retryable retryable = new Retryable(file);
         retryable.run();
@@ -80,9 +120,9 @@ public class Downloader {
     }
 
     private class Retryable implements Runnable {
-        private final AtomicInteger retriesRemaining = new AtomicInteger(2);
         private final CompletableFuture<Void> result = new CompletableFuture<>();
         private final JenkinsFile file;
+        private int retries;
 
         private Retryable(JenkinsFile file) {
             this.file = file;
@@ -90,60 +130,112 @@ public class Downloader {
 
         @Override
         public void run() {
-            executor.execute(() -> {
-                try {
-                    concurrentDownloadsPermit.acquire();
-                    doRun();
-                    result.complete(null);
-                } catch (IOException | DigestException e) {
-                    result.completeExceptionally(e);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+            try {
+                downloadExecutor.execute(this::attempt);
+            } catch (RejectedExecutionException e) {
+                // the downloader was shut down while waiting for a retry
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void attempt() {
+            try {
+                doRun();
+                result.complete(null);
+            } catch (IOException e) {
+                if (shouldRetryForException(e) && retries < maxRetries) {
+                    retry(e);
+                } else {
                     result.completeExceptionally(e);
-                } finally {
-                    concurrentDownloadsPermit.release();
                 }
-            });
+            } catch (DigestException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void retry(IOException ioEx) {
+            // full delay doubled at each retry, half of it random so that the failed downloads do not all
+            // hit the mirror again at the same time; the shift is bounded so that the delay cannot overflow
+            final long delay = Math.min(INITIAL_RETRY_DELAY_MILLIS << Math.min(retries, MAX_RETRY_DELAY_SHIFT),
+                    MAX_RETRY_DELAY_MILLIS);
+            final long delayWithJitter = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+            retries++;
+            System.out.printf("Failed to download %s due to %s, will retry in %dms%n", file.getUrl(),
+                    StringUtils.isEmpty(ioEx.getMessage()) ? ioEx.getClass().getName() : ioEx.getMessage(),
+                    delayWithJitter);
+            try {
+                retryScheduler.schedule(this, delayWithJitter, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                ioEx.addSuppressed(e);
+                result.completeExceptionally(ioEx);
+            }
         }
 
         private void doRun() throws IOException, DigestException {
             URL url = new URL(file.getUrl());
-            try {
-                HttpURLConnection request = (HttpURLConnection) url.openConnection();
-                int responseCode = request.getResponseCode();
-                if (responseCode == 502) {
-                    throw new IOException("Flaky Update Center returned HTTP 502");
-                } else if (responseCode >= 400) {
-                    throw new HttpResponseException(responseCode, request.getResponseMessage());
-                } else {
-                    long fileSize;
-                    try (InputStream in = request.getInputStream();
-                         OutputStream out = file.getFileOutputStream()) {
-                        fileSize = IOUtils.copyLarge(in, out);
+            // the content already downloaded by a failed attempt, of this run or of a previous run, is not downloaded again
+            long offset = file.getPartFileSize();
+            HttpURLConnection request = (HttpURLConnection) url.openConnection();
+            if (offset > 0) {
+                request.setRequestProperty("Range", "bytes=" + offset + '-');
+            }
+            int responseCode = request.getResponseCode();
+            if (responseCode >= 400) {
+                // the body of the error is read so that the connection can be reused
+                try (InputStream error = request.getErrorStream()) {
+                    if (error != null) {
+                        IOUtils.skip(error, Long.MAX_VALUE);
                     }
-                    if (file.isFileMessageDigestValid()) {
-                        System.out.printf("Downloaded %s @ %.2f kiB%n", file.getUrl(), (fileSize / 1024.0));
-                    } else {
-                        throw new DigestException("Downloaded file message digest does not match update center for " + url);
+                }
+            }
+            if (responseCode == 416 && offset > 0) {
+                // the part file is not shorter than the file to download, it is not part of it
+                file.deletePartFile();
+                doRun();
+            } else if (responseCode == 502) {
+                throw new IOException("Flaky Update Center returned HTTP 502");
+            } else if (responseCode >= 400) {
+                throw new HttpResponseException(responseCode, request.getResponseMessage());
+            } else {
+                if (responseCode != 206 || !isContentRangeFrom(request, offset)) {
+                    // the server sends the whole file
+                    offset = 0;
+                }
+                long fileSize;
+                try (InputStream in = request.getInputStream();
+                     OutputStream out = file.getPartFileOutputStream(offset)) {
+                    final long length = IOUtils.copyLarge(in, out);
+                    // a connection closed before the end of a response with a length is not reported as an error
+                    if (request.getContentLengthLong() > length) {
+                        throw new IOException("Premature EOF");
                     }
+                    fileSize = offset + length;
                 }
-            } catch (IOException ioEx) {
-                if (shouldRetryForException(ioEx) && retriesRemaining.getAndDecrement() > 0) {
-                    try {
-                        System.out.printf("Failed to download %s due to %s, will retry in 750ms%n", StringUtils.isEmpty(ioEx.getMessage()) ? ioEx.getClass().getName() : ioEx.getMessage() , file.getUrl());
-                        Thread.sleep(7500L);
-                    } catch (InterruptedException ex) {
-                        IOException toThrow = new IOException("InterruptedException in sleep backoff", ex);
-                        toThrow.addSuppressed(ioEx);
-                        throw toThrow;
+                if (file.isFileMessageDigestValid()) {
+                    file.completePartFile();
+                    if (offset > 0) {
+                        System.out.printf("Downloaded %s @ %.2f kiB, resumed at %.2f kiB%n", file.getUrl(),
+                                (fileSize / 1024.0), (offset / 1024.0));
+                    } else {
+                        System.out.printf("Downloaded %s @ %.2f kiB%n", file.getUrl(), (fileSize / 1024.0));
                     }
-                    doRun();
                 } else {
-                    throw ioEx;
+                    file.deletePartFile();
+                    if (offset > 0) {
+                        // the part file may have been downloaded from another version of the file
+                        doRun();
+                    } else {
+                        throw new DigestException("Downloaded file message digest does not match update center for " + url);
+                    }
                 }
             }
         }
 
+        private boolean isContentRangeFrom(HttpURLConnection request, long offset) {
+            final String contentRange = request.getHeaderField("Content-Range");
+            return contentRange != null && contentRange.startsWith("bytes " + offset + '-');
+        }
+
         private boolean shouldRetryForException(IOException ioEx) {
             if (ioEx instanceof SocketException) {
                 return true;
@@ -0,0 +1,56 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.util.Arrays;
+
+/**
+ * Set of ints, kept sorted in an array: compact for the small sets of APIs used by a plugin. Not thread safe.
+ */
+public class IntSet {
+    private static final int[] EMPTY = new int[0];
+
+    private int[] values = EMPTY;
+    private int size;
+
+    /**
+     * Returns true if the value was not already in the set.
+     */
+    public boolean add(int value) {
+        final int index = Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) {
+            return false;
+        }
+        final int insertionIndex = -index - 1;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(8, size * 2));
+        }
+        System.arraycopy(values, insertionIndex, values, insertionIndex + 1, size - insertionIndex);
+        values[insertionIndex] = value;
+        size++;
+        return true;
+    }
+
+    public void addAll(IntSet other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.values[i]);
+        }
+    }
+
+    public boolean contains(int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value at an index, from 0 to size - 1, in increasing order of values.
+     */
+    public int get(int index) {
+        return values[index];
+    }
+}
@@ -1,38 +1,113 @@
 package org.jenkinsci.deprecatedusage;
 
-import java.io.BufferedInputStream;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 
+/**
+ * Reads the classes of a jar nested in a war. The jar is copied in memory and read through its central directory,
+ * so that only the class files are inflated and not the other resources. A jar stored without compression
+ * in a memory-mapped war is read in place.
+ */
 public class JarReader implements Closeable {
+    private final ZipBuffer zipBuffer;
+    // sequential reading for the jars not supported by ZipBuffer
     private final ZipInputStream zipInputStream;
+    private int index = -1;
     private ZipEntry entry;
+    private InputStream entryInputStream;
 
     public JarReader(InputStream input) throws IOException {
+        this(input, -1);
+    }
+
+    /**
+     * @param size size of the jar if known, or -1
+     */
+    public JarReader(InputStream input, long size) throws IOException {
+        super();
+        final byte[] bytes = size >= 0 ? IOUtils.toByteArray(input, size) : IOUtils.toByteArray(input);
+        ZipBuffer buffer;
+        try {
+            buffer = new ZipBuffer(ByteBuffer.wrap(bytes));
+        } catch (ZipException e) {
+            buffer = null;
+        }
+        this.zipBuffer = buffer;
+        this.zipInputStream = buffer == null ? new ZipInputStream(new ByteArrayInputStream(bytes)) : null;
+    }
+
+    /**
+     * @param jar content of the jar, which is read in place
+     * @throws ZipException if the jar cannot be read through its central directory
+     */
+    public JarReader(ByteBuffer jar) throws ZipException {
         super();
-        this.zipInputStream = new ZipInputStream(new BufferedInputStream(input, 50 * 1024));
+        this.zipBuffer = new ZipBuffer(jar);
+        this.zipInputStream = null;
     }
 
     public String nextClass() throws IOException {
-        entry = zipInputStream.getNextEntry();
-        while (entry != null && !entry.getName().endsWith(".class")) {
+        if (zipInputStream != null) {
             entry = zipInputStream.getNextEntry();
+            while (entry != null && !entry.getName().endsWith(".class")) {
+                entry = zipInputStream.getNextEntry();
+            }
+            if (entry != null) {
+                return entry.getName();
+            }
+            return null;
         }
-        if (entry != null) {
-            return entry.getName();
+        closeEntry();
+        while (++index < zipBuffer.size()) {
+            final String fileName = zipBuffer.getName(index);
+            if (fileName.endsWith(".class")) {
+                return fileName;
+            }
         }
         return null;
     }
 
     public InputStream getInputStream() throws IOException {
-        return zipInputStream;
+        if (zipInputStream != null) {
+            return zipInputStream;
+        }
+        if (entryInputStream == null) {
+            entryInputStream = zipBuffer.getInputStream(index);
+        }
+        return entryInputStream;
+    }
+
+    /**
+     * Returns the uncompressed size of the current class file, or -1 if it is not known.
+     */
+    public long getSize() {
+        if (zipInputStream != null) {
+            return entry.getSize();
+        }
+        return zipBuffer.getSize(index);
+    }
+
+    private void closeEntry() throws IOException {
+        if (entryInputStream != null) {
+            entryInputStream.close();
+            entryInputStream = null;
+        }
     }
 
     @Override
     public void close() throws IOException {
-        zipInputStream.close();
+        if (zipInputStream != null) {
+            zipInputStream.close();
+        } else {
+            closeEntry();
+        }
     }
 }
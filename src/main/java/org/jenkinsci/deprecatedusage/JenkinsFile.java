@@ -1,20 +1,28 @@
 package org.jenkinsci.deprecatedusage;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.util.Objects;
 
 public class JenkinsFile {
+    // marker file in the directory of each version, modified when the version is analyzed
+    public static final String ANALYZED_FILE_NAME = ".analyzed";
+
     private final String name;
     private final String version;
     private final String url;
@@ -55,14 +63,46 @@ public class JenkinsFile {
         return url;
     }
 
+    /**
+     * Returns the digest of the file expected by the update center, as an hexadecimal string,
+     * or null if the update center does not provide one.
+     */
+    public String getDigest() {
+        return expectedDigest == null ? null : Hex.encodeHexString(expectedDigest);
+    }
+
     public void setFile(File file) {
         this.file = file.toPath();
     }
 
     public void deleteFile() throws IOException {
         Files.deleteIfExists(file);
+        Files.deleteIfExists(getVerifiedFile());
+    }
+
+    /**
+     * Records that the file has been analyzed now, as the modification time of a marker file in its directory,
+     * so that the least recently analyzed versions are the first ones evicted from the work directory.
+     */
+    public void markAnalyzed() {
+        final Path analyzedFile = file.resolveSibling(ANALYZED_FILE_NAME);
+        try {
+            try {
+                Files.createFile(analyzedFile);
+            } catch (FileAlreadyExistsException e) {
+                Files.setLastModifiedTime(analyzedFile, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+        } catch (IOException ignored) {
+            // not downloaded
+        }
     }
 
+    /**
+     * Returns true if the file exists and has the expected digest.
+     * <p>
+     * Once verified, the size and modification time of the file are recorded with its digest in a sidecar file,
+     * so that the file is only read and hashed again if it has changed.
+     */
     public boolean isFileSynchronized() {
         if (Files.notExists(file)) {
             return false;
@@ -70,23 +110,99 @@ public class JenkinsFile {
         if (messageDigest == null) {
             return true;
         }
-        try (InputStream in = Files.newInputStream(file)) {
-            messageDigest.reset();
-            return MessageDigest.isEqual(expectedDigest, DigestUtils.digest(messageDigest, in));
+        try {
+            final String verified = getVerifiedLine();
+            final Path verifiedFile = getVerifiedFile();
+            if (Files.exists(verifiedFile)
+                    && verified.equals(new String(Files.readAllBytes(verifiedFile), StandardCharsets.UTF_8))) {
+                return true;
+            }
+            try (InputStream in = Files.newInputStream(file)) {
+                messageDigest.reset();
+                if (!MessageDigest.isEqual(expectedDigest, DigestUtils.digest(messageDigest, in))) {
+                    return false;
+                }
+            }
+            writeVerifiedFile(verified);
+            return true;
         } catch (IOException ignored) {
             return false;
         }
     }
 
-    public OutputStream getFileOutputStream() throws IOException {
-        OutputStream fileStream = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    /**
+     * Returns the size of the file partially downloaded by a previous attempt, or 0 if there is none.
+     */
+    public long getPartFileSize() {
+        try {
+            return Files.size(getPartFile());
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns a stream to write the downloaded content to a part file, which becomes the file once complete.
+     *
+     * @param offset 0 to download the whole content again, or the size of the part file to resume its download
+     */
+    public OutputStream getPartFileOutputStream(long offset) throws IOException {
+        final Path partFile = getPartFile();
         if (messageDigest != null) {
             messageDigest.reset();
+            if (offset > 0) {
+                // the digest of the part already downloaded, so that the file does not have to be read again once complete
+                try (InputStream in = Files.newInputStream(partFile)) {
+                    DigestUtils.updateDigest(messageDigest, in);
+                }
+            }
+        }
+        OutputStream fileStream = offset > 0
+                ? Files.newOutputStream(partFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : Files.newOutputStream(partFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        if (messageDigest != null) {
             return new DigestOutputStream(fileStream, messageDigest);
         }
         return fileStream;
     }
 
+    /**
+     * Replaces the file with the complete part file.
+     */
+    public void completePartFile() throws IOException {
+        Files.deleteIfExists(getVerifiedFile());
+        Files.move(getPartFile(), file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (messageDigest != null) {
+            // the digest has been checked while downloading
+            writeVerifiedFile(getVerifiedLine());
+        }
+    }
+
+    public void deletePartFile() throws IOException {
+        Files.deleteIfExists(getPartFile());
+    }
+
+    private String getVerifiedLine() throws IOException {
+        return Files.size(file) + " " + Files.getLastModifiedTime(file).toMillis() + " " + getDigest();
+    }
+
+    private void writeVerifiedFile(String verified) {
+        final Path verifiedFile = getVerifiedFile();
+        try {
+            AtomicFiles.write(verifiedFile, verified.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.out.println("Failed to record verified digest of " + file + " because " + e.toString());
+        }
+    }
+
+    private Path getVerifiedFile() {
+        return file.resolveSibling(file.getFileName() + ".verified");
+    }
+
+    private Path getPartFile() {
+        return file.resolveSibling(file.getFileName() + ".part");
+    }
+
     public boolean isFileMessageDigestValid() {
         return messageDigest == null || MessageDigest.isEqual(expectedDigest, messageDigest.digest());
     }
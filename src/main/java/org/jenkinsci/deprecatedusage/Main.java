@@ -1,7 +1,5 @@
 package org.jenkinsci.deprecatedusage;
 
-import org.apache.commons.io.IOUtils;
-import org.json.JSONObject;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 
@@ -9,25 +7,28 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,6 +51,12 @@ public class Main {
             System.exit(1);
         }
 
+        if (options.downloadRetries < 0) {
+            System.err.println("--downloadRetries must not be negative");
+            commandLineParser.printUsage(System.err);
+            System.exit(1);
+        }
+
         if (options.help) {
             commandLineParser.printUsage(System.err);
             System.exit(0);
@@ -64,51 +71,135 @@ public class Main {
         }
 
         final ExecutorService executor = Executors.newWorkStealingPool();
-        final Downloader downloader = new Downloader(executor, options.maxConcurrentDownloads);
+        final Downloader downloader = new Downloader(options.maxConcurrentDownloads, options.downloadRetries);
         final long start = System.currentTimeMillis();
         try {
             final DeprecatedApi deprecatedApi = new DeprecatedApi();
             addClassesToAnalyze(deprecatedApi);
             List<String> updateCenterURLs = options.getUpdateCenterURLs();
-            CountDownLatch metadataLoaded = new CountDownLatch(updateCenterURLs.size());
-            Set<JenkinsFile> cores = new ConcurrentSkipListSet<>(Comparator.comparing(JenkinsFile::getFile));
-            Set<JenkinsFile> plugins = new ConcurrentSkipListSet<>(Comparator.comparing(JenkinsFile::getFile));
+            if (options.delta && options.noCache) {
+                System.out.println("Ignoring --delta, since there are no previous results to reuse with --noCache");
+            }
+            final boolean delta = options.delta && !options.noCache;
+            // each file is downloaded as soon as it is parsed from the update center metadata, once even if it is
+            // in several update centers, except plugins in delta mode which are only downloaded if new or updated
+            Map<JenkinsFile, CompletableFuture<JenkinsFile>> coreDownloads = new ConcurrentHashMap<>();
+            Set<JenkinsFile> plugins = ConcurrentHashMap.newKeySet();
+            Map<JenkinsFile, CompletableFuture<JenkinsFile>> pluginDownloads = new ConcurrentHashMap<>();
+            final UpdateCenterCache updateCenterCache = options.noCache ? null : new UpdateCenterCache(options.cacheDirectory);
+            final List<CompletableFuture<Void>> metadataFutures = new ArrayList<>();
             for (String updateCenterURL : updateCenterURLs) {
                 URL url = new URL(updateCenterURL);
-                executor.execute(() -> {
+                metadataFutures.add(CompletableFuture.runAsync(() -> {
                     System.out.println("Using update center URL: " + updateCenterURL);
+                    final Consumer<JenkinsFile> coreListener =
+                            core -> coreDownloads.computeIfAbsent(core, downloader::synchronize);
+                    final Consumer<JenkinsFile> pluginListener = plugin -> {
+                        if (plugins.add(plugin) && !delta) {
+                            pluginDownloads.put(plugin, downloader.synchronize(plugin));
+                        }
+                    };
                     try {
-                        String json = IOUtils.toString(url, StandardCharsets.UTF_8).replace("updateCenter.post(", "");
-                        UpdateCenter updateCenter = new UpdateCenter(new JSONObject(json));
-                        cores.add(updateCenter.getCore());
-                        plugins.addAll(updateCenter.getPlugins());
-                        metadataLoaded.countDown();
+                        if (updateCenterCache != null) {
+                            updateCenterCache.parse(url, coreListener, pluginListener);
+                        } else {
+                            try (Reader reader = new InputStreamReader(url.openStream(), StandardCharsets.UTF_8)) {
+                                UpdateCenter.parse(reader, coreListener, pluginListener);
+                            }
+                        }
                     } catch (IOException e) {
                         throw new UncheckedIOException(e);
                     }
-                });
+                }, executor).whenComplete((ignored, failure) -> {
+                    if (failure != null) {
+                        System.out.println("Failed to load update center metadata from " + updateCenterURL
+                                + " because " + failure.getCause());
+                    }
+                }));
             }
 
-            // wait for async code to finish submitting
-            metadataLoaded.await(10, TimeUnit.SECONDS);
+            // the report would be incomplete without the plugins of an update center
+            CompletableFuture.allOf(metadataFutures.toArray(new CompletableFuture<?>[0])).get();
             System.out.println("Downloading core files");
-            for (JenkinsFile core : downloader.synchronize(cores).get()) {
-                try {
-                    System.out.println("Analyzing deprecated APIs in " + core);
-                    deprecatedApi.analyze(core.getFile());
-                    System.out.println("Finished deprecated API analysis in " + core);
-                } catch (IOException e) {
-                    System.out.println("Error analyzing deprecated APIs in " + core);
-                    System.out.println(e.toString());
-                }
+            final DeprecatedApiCache deprecatedApiCache = options.noCache || options.onlyIncludeSpecified ? null
+                    : new DeprecatedApiCache(options.cacheDirectory);
+            final List<CompletableFuture<Void>> coreFutures = new ArrayList<>();
+            for (CompletableFuture<JenkinsFile> coreDownload : coreDownloads.values()) {
+                // several core versions are analyzed in parallel as soon as they are downloaded,
+                // and so are the jars of each core
+                coreFutures.add(coreDownload.thenAcceptAsync(core -> {
+                    if (core == null) {
+                        return;
+                    }
+                    try {
+                        deprecatedApi.addAll(analyzeDeprecatedApi(core, deprecatedApiCache, executor));
+                    } catch (IOException e) {
+                        System.out.println("Error analyzing deprecated APIs in " + core);
+                        System.out.println(e.toString());
+                    }
+                }, executor));
             }
+            CompletableFuture.allOf(coreFutures.toArray(new CompletableFuture<?>[0])).get();
+            deprecatedApi.freeze();
 
-            System.out.println("Downloading plugin files (out of " + plugins.size() + " total)");
-
-            Collection<JenkinsFile> downloadedPlugins = downloader.synchronize(plugins).get();
+            final ScanResultCache scanResultCache = options.noCache ? null
+                    : new ScanResultCache(options.cacheDirectory, deprecatedApi, options.includePluginLibraries);
+            final RunManifest runManifest = scanResultCache == null ? null : new RunManifest(options.cacheDirectory);
+            if (runManifest != null) {
+                runManifest.printDelta(plugins);
+            }
+            final List<CompletableFuture<DeprecatedUsage>> futures = Collections.synchronizedList(new ArrayList<>());
+            if (delta) {
+                // the results of the previous scans of a plugin file do not need the file, the plugins whose
+                // results cannot be read are downloaded and analyzed again
+                int unchangedCount = 0;
+                for (JenkinsFile plugin : plugins) {
+                    final DeprecatedUsage cachedUsage = scanResultCache.load(plugin);
+                    if (cachedUsage != null) {
+                        plugin.markAnalyzed();
+                        futures.add(CompletableFuture.completedFuture(cachedUsage));
+                        unchangedCount++;
+                    } else {
+                        pluginDownloads.put(plugin, downloader.synchronize(plugin));
+                    }
+                }
+                System.out.println("Reusing the previous results of " + unchangedCount + " plugins without downloading them");
+            }
+            System.out.println("Downloading and analyzing plugin files (out of " + plugins.size() + " total)");
+            // each plugin is analyzed as soon as it is downloaded, while the next plugins are still downloading,
+            // the largest plugins which are not in the cache first
+            final AnalysisScheduler<DeprecatedUsage> scheduler = new AnalysisScheduler<>(executor,
+                    plugin -> scanResultCache != null && scanResultCache.contains(plugin) ? 0 : plugin.getFile().length(),
+                    plugin -> analyzeDeprecatedUsage(plugin, deprecatedApi, scanResultCache,
+                            options.includePluginLibraries));
+            final List<CompletableFuture<Void>> pluginFutures = new ArrayList<>();
+            for (CompletableFuture<JenkinsFile> pluginDownload : pluginDownloads.values()) {
+                pluginFutures.add(pluginDownload.thenAccept(plugin -> {
+                    if (plugin != null) {
+                        futures.add(scheduler.schedule(plugin));
+                    }
+                }));
+            }
+            CompletableFuture.allOf(pluginFutures.toArray(new CompletableFuture<?>[0])).get();
 
-            System.out.println("Analyzing usage in plugins");
-            final List<DeprecatedUsage> deprecatedUsages = analyzeDeprecatedUsage(downloadedPlugins, deprecatedApi, executor, options.includePluginLibraries);
+            final List<DeprecatedUsage> deprecatedUsages = getDeprecatedUsages(futures);
+            // the members inherited through the classes of other plugins are known once all plugins are scanned,
+            // and are not part of the cached scan results, which only depend on the plugin file
+            final PluginClassHierarchy pluginClassHierarchy = new PluginClassHierarchy(deprecatedUsages);
+            for (DeprecatedUsage deprecatedUsage : deprecatedUsages) {
+                deprecatedUsage.resolveThroughPlugins(pluginClassHierarchy);
+            }
+            if (runManifest != null) {
+                // only the plugins with a result are recorded, so that the next run does not take the plugins
+                // which failed to download or to be analyzed for unchanged ones
+                final List<JenkinsFile> scannedPlugins = new ArrayList<>();
+                for (JenkinsFile plugin : plugins) {
+                    if (scanResultCache.contains(plugin)) {
+                        scannedPlugins.add(plugin);
+                    }
+                }
+                runManifest.save(scannedPlugins);
+            }
 
             Report[] reports = new Report[]{
                     new DeprecatedUsageByPluginReport(deprecatedApi, deprecatedUsages, new File("output"), "usage-by-plugin"),
@@ -121,9 +212,16 @@ public class Main {
                 report.generateHtmlReport();
             }
 
+            if (options.maxWorkAge > 0 || options.maxWorkSize > 0) {
+                final Set<JenkinsFile> referencedFiles = new HashSet<>(coreDownloads.keySet());
+                referencedFiles.addAll(plugins);
+                new WorkCache(new File("work"), options.cacheDirectory).evict(referencedFiles, options.maxWorkAge, options.maxWorkSize);
+            }
+
             System.out.println("duration : " + (System.currentTimeMillis() - start) + " ms at "
                     + DateFormat.getDateTimeInstance().format(new Date()));
         } finally {
+            downloader.shutdown();
             executor.shutdown();
         }
     }
@@ -141,30 +239,62 @@ public class Main {
         }
     }
 
-    private static List<DeprecatedUsage> analyzeDeprecatedUsage(Collection<JenkinsFile> plugins, DeprecatedApi deprecatedApi,
-                                                                Executor executor, boolean scanPluginLibs)
-            throws InterruptedException, ExecutionException {
-        List<CompletableFuture<DeprecatedUsage>> futures = new ArrayList<>();
-        for (JenkinsFile plugin : plugins) {
-            futures.add(CompletableFuture.supplyAsync(() -> {
-                DeprecatedUsage deprecatedUsage = new DeprecatedUsage(plugin.getName(), plugin.getVersion(), deprecatedApi, scanPluginLibs);
-                try {
-                    deprecatedUsage.analyze(plugin.getFile());
-                } catch (final EOFException | ZipException | FileNotFoundException e) {
-                    System.out.println("deleting " + plugin + " and skipping, because " + e.toString());
-                    try {
-                        plugin.deleteFile();
-                    } catch (IOException ioException) {
-                        ioException.printStackTrace();
-                    }
-                } catch (final Exception e) {
-                    System.out.println(e.toString() + " on " + plugin.getFile().getName());
-                    e.printStackTrace();
+    private static DeprecatedApi analyzeDeprecatedApi(JenkinsFile core, DeprecatedApiCache deprecatedApiCache,
+                                                      Executor executor) throws IOException {
+        core.markAnalyzed();
+        if (deprecatedApiCache != null) {
+            DeprecatedApi cachedApi = deprecatedApiCache.load(core);
+            if (cachedApi != null) {
+                System.out.println("Using cached deprecated APIs of " + core);
+                return cachedApi;
+            }
+        }
+        System.out.println("Analyzing deprecated APIs in " + core);
+        DeprecatedApi coreApi = new DeprecatedApi();
+        coreApi.analyze(core.getFile(), executor);
+        System.out.println("Finished deprecated API analysis in " + core);
+        if (deprecatedApiCache != null) {
+            deprecatedApiCache.save(core, coreApi);
+        }
+        return coreApi;
+    }
+
+    private static DeprecatedUsage analyzeDeprecatedUsage(JenkinsFile plugin, DeprecatedApi deprecatedApi,
+                                                          ScanResultCache scanResultCache, boolean scanPluginLibs) {
+        plugin.markAnalyzed();
+        if (scanResultCache != null) {
+            DeprecatedUsage cachedUsage = scanResultCache.load(plugin);
+            if (cachedUsage != null) {
+                return cachedUsage;
+            }
+        }
+        DeprecatedUsage deprecatedUsage = new DeprecatedUsage(plugin.getName(), plugin.getVersion(), deprecatedApi, scanPluginLibs);
+        try {
+            deprecatedUsage.analyze(plugin.getFile());
+            if (scanResultCache != null) {
+                // an incomplete result is not kept, so that the next runs analyze the plugin again
+                if (deprecatedUsage.isIncomplete()) {
+                    System.out.println("Not caching the scan result of " + plugin + " since it is incomplete");
+                } else {
+                    scanResultCache.save(plugin, deprecatedUsage);
                 }
-                return deprecatedUsage;
-            }, executor));
+            }
+        } catch (final EOFException | ZipException | FileNotFoundException e) {
+            System.out.println("deleting " + plugin + " and skipping, because " + e.toString());
+            try {
+                plugin.deleteFile();
+            } catch (IOException ioException) {
+                ioException.printStackTrace();
+            }
+        } catch (final Exception e) {
+            System.out.println(e.toString() + " on " + plugin.getFile().getName());
+            e.printStackTrace();
         }
+        return deprecatedUsage;
+    }
 
+    private static List<DeprecatedUsage> getDeprecatedUsages(List<CompletableFuture<DeprecatedUsage>> futures)
+            throws InterruptedException, ExecutionException {
         final List<DeprecatedUsage> deprecatedUsages = new ArrayList<>();
         int i = 0;
         for (final Future<DeprecatedUsage> future : futures) {
@@ -181,6 +311,8 @@ public class Main {
                 System.out.print("\n");
             }
         }
+        // plugins are analyzed in the order their downloads complete
+        deprecatedUsages.sort(Comparator.comparing(DeprecatedUsage::getPlugin));
         return deprecatedUsages;
     }
 
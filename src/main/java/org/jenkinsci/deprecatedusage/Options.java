@@ -10,6 +10,7 @@ import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
@@ -30,6 +31,7 @@ public class Options {
     private static List<String> additionalClasses;
     private static Map<String, Set<String>> additionalMethodNames;
     private static Map<String, Set<String>> additionalFields;
+    private static volatile PrefixMatcher additionalClassPrefixes;
 
     @Option(name = "-h", aliases = "--help", usage = "Shows help")
     public boolean help;
@@ -61,6 +63,27 @@ public class Options {
     @Option(name = "-D", aliases = "--downloadConcurrent", metaVar = "COUNT", usage = "Specifies number of concurrent downloads to allow")
     public int maxConcurrentDownloads = Runtime.getRuntime().availableProcessors() * 4;
 
+    @Option(name = "--downloadRetries", metaVar = "COUNT", usage = "Specifies number of times a download is retried after a transient failure")
+    public int downloadRetries = 2;
+
+    @Option(name = "--cacheDir", metaVar = "DIRECTORY", usage = "Directory where scan results are kept between runs")
+    public File cacheDirectory = new File("work", ".cache");
+
+    @Option(name = "--noCache", usage = "Download the update center metadata, analyze core and scan all plugins again instead of reusing the results of previous runs")
+    public boolean noCache;
+
+    @Option(name = "--maxWorkAge", metaVar = "DAYS", usage = "Deletes the downloaded versions which are no longer in the update centers and have not been analyzed for this number of days")
+    public int maxWorkAge;
+
+    @Option(name = "--maxWorkSize", metaVar = "MB", usage = "Deletes the downloaded versions which are no longer in the update centers, least recently analyzed first, while the work directory is larger than this size")
+    public long maxWorkSize;
+
+    @Option(name = "--delta", usage = "Only download and scan the plugins which are new or updated since their previous scan, reusing the previous results for the others")
+    public boolean delta;
+
+    @Option(name = "--mmap", usage = "Memory-map plugin and core files to read their classes, instead of reading them through ZipFile")
+    public boolean memoryMap;
+
     @Option(name = "-v", aliases = "--verbose", usage = "Add verbose logging about downloads")
     public boolean verbose;
 
@@ -158,4 +181,33 @@ public class Options {
         }
         return additionalFields;
     }
+
+    /**
+     * Returns a matcher of the classes and packages given in the additional classes, methods and fields files
+     * which have been specified. It is built once and shared by the threads scanning plugins.
+     */
+    static PrefixMatcher getAdditionalClassPrefixes() {
+        PrefixMatcher prefixMatcher = additionalClassPrefixes;
+        if (prefixMatcher == null) {
+            synchronized (Options.class) {
+                prefixMatcher = additionalClassPrefixes;
+                if (prefixMatcher == null) {
+                    final Options options = get();
+                    final List<String> prefixes = new ArrayList<>();
+                    if (options.additionalClassesFile != null) {
+                        prefixes.addAll(getAdditionalClasses());
+                    }
+                    if (options.additionalMethodsFile != null) {
+                        prefixes.addAll(getAdditionalMethodNames().keySet());
+                    }
+                    if (options.additionalFieldsFile != null) {
+                        prefixes.addAll(getAdditionalFields().keySet());
+                    }
+                    prefixMatcher = new PrefixMatcher(prefixes);
+                    additionalClassPrefixes = prefixMatcher;
+                }
+            }
+        }
+        return prefixMatcher;
+    }
 }
@@ -0,0 +1,56 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of the superclass and interfaces of the classes of all plugins, built once all plugins are scanned
+ * to resolve the members that a plugin inherits through the classes of its dependencies.
+ * <p>
+ * Classes and supertypes are ids in the dictionary of the deprecated APIs. When a class is found in several
+ * plugins, it has the supertypes found in all of them.
+ */
+public class PluginClassHierarchy {
+    private static final int[] NO_SUPER_TYPES = new int[0];
+
+    private final Map<Integer, int[]> superTypeIdsByClassId = new HashMap<>();
+
+    public PluginClassHierarchy(Collection<DeprecatedUsage> deprecatedUsages) {
+        super();
+        for (DeprecatedUsage deprecatedUsage : deprecatedUsages) {
+            final int[] ids = deprecatedUsage.getSuperTypeIds();
+            int index = 0;
+            while (index < ids.length) {
+                final int classId = ids[index];
+                final int count = ids[index + 1];
+                final int[] superTypeIds = Arrays.copyOfRange(ids, index + 2, index + 2 + count);
+                superTypeIdsByClassId.merge(classId, superTypeIds, PluginClassHierarchy::union);
+                index += 2 + count;
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of the superclass and interfaces of a class, or none if the class is not in a plugin.
+     */
+    public int[] getSuperTypeIds(int classId) {
+        return superTypeIdsByClassId.getOrDefault(classId, NO_SUPER_TYPES);
+    }
+
+    private static int[] union(int[] superTypeIds, int[] otherSuperTypeIds) {
+        final IntSet union = new IntSet();
+        for (int id : superTypeIds) {
+            union.add(id);
+        }
+        for (int id : otherSuperTypeIds) {
+            union.add(id);
+        }
+        final int[] ids = new int[union.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = union.get(i);
+        }
+        return ids;
+    }
+}
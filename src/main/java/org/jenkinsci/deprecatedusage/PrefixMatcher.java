@@ -0,0 +1,42 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable matcher of strings starting with any of a list of prefixes, such as class or package names.
+ * <p>
+ * The prefixes are sorted, without the ones starting with another prefix. Then the only prefix which can match
+ * a string is the greatest one not greater than the string, found with a binary search.
+ */
+public class PrefixMatcher {
+    private final String[] prefixes;
+
+    public PrefixMatcher(Collection<String> prefixes) {
+        super();
+        final String[] sortedPrefixes = prefixes.toArray(new String[0]);
+        Arrays.sort(sortedPrefixes);
+        final List<String> uncoveredPrefixes = new ArrayList<>(sortedPrefixes.length);
+        for (String prefix : sortedPrefixes) {
+            // in sorted order, a prefix comes just before the strings it is a prefix of
+            if (uncoveredPrefixes.isEmpty() || !prefix.startsWith(uncoveredPrefixes.get(uncoveredPrefixes.size() - 1))) {
+                uncoveredPrefixes.add(prefix);
+            }
+        }
+        this.prefixes = uncoveredPrefixes.toArray(new String[0]);
+    }
+
+    /**
+     * Returns true if the string starts with one of the prefixes.
+     */
+    public boolean matches(String string) {
+        final int index = Arrays.binarySearch(prefixes, string);
+        if (index >= 0) {
+            return true;
+        }
+        final int floorIndex = -index - 2;
+        return floorIndex >= 0 && string.startsWith(prefixes[floorIndex]);
+    }
+}
@@ -0,0 +1,85 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the version of each plugin scanned at the end of a run, to report which plugins are new,
+ * updated or removed in the next run.
+ */
+public class RunManifest {
+    private final Path file;
+
+    public RunManifest(File cacheDirectory) {
+        super();
+        this.file = cacheDirectory.toPath().resolve("last-run.json");
+    }
+
+    /**
+     * Prints how the plugins differ from the ones of the previous run, if there was one.
+     */
+    public void printDelta(Collection<JenkinsFile> plugins) {
+        final Map<String, String> previousVersions = load();
+        if (previousVersions == null) {
+            return;
+        }
+        int newCount = 0;
+        int updatedCount = 0;
+        int unchangedCount = 0;
+        for (JenkinsFile plugin : plugins) {
+            final String previousVersion = previousVersions.remove(plugin.getName());
+            if (previousVersion == null) {
+                newCount++;
+            } else if (previousVersion.equals(plugin.getVersion())) {
+                unchangedCount++;
+            } else {
+                updatedCount++;
+            }
+        }
+        System.out.println("Since the previous run: " + newCount + " new plugins, " + updatedCount + " updated, "
+                + previousVersions.size() + " removed and " + unchangedCount + " unchanged");
+    }
+
+    /**
+     * Records the plugins scanned by this run, once their results are known.
+     */
+    public void save(Collection<JenkinsFile> plugins) {
+        final Map<String, String> versions = new TreeMap<>();
+        for (JenkinsFile plugin : plugins) {
+            versions.put(plugin.getName(), plugin.getVersion());
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            AtomicFiles.write(file, new JSONObject(versions).toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.out.println("Failed to record the plugins of this run because " + e.toString());
+        }
+    }
+
+    private Map<String, String> load() {
+        if (Files.notExists(file)) {
+            return null;
+        }
+        try {
+            final JSONObject json = new JSONObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            final Map<String, String> versions = new HashMap<>();
+            for (Object name : json.keySet()) {
+                versions.put(name.toString(), json.getString(name.toString()));
+            }
+            return versions;
+        } catch (IOException | JSONException e) {
+            System.out.println("Ignoring the plugins of the previous run because " + e.toString());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the deprecated usages found in each plugin between runs, so that plugins which did not change
+ * are not scanned again.
+ * <p>
+ * Results are stored by digest of the plugin file, in a directory named after a fingerprint of the deprecated
+ * APIs, of the hierarchy of core classes and of the options changing the results of a scan: results are only
+ * reused if they were computed for the same deprecated APIs.
+ * <p>
+ * Each result file contains the ids of the deprecated classes, methods and fields used by the plugin. The names of
+ * the ids are appended to a dictionary file of the directory when first used, so that the results are read without
+ * decoding and interning their names again.
+ * <p>
+ * Each directory also records the version of its format, the directories of the other formats being deleted.
+ * Only the directories of the most recently used fingerprints are kept, such as those of runs with and without
+ * plugin libraries, the others being deleted.
+ */
+public class ScanResultCache {
+    // to be incremented when a change in the scan gives different results for the same plugin
+    private static final int FORMAT_VERSION = 5;
+    private static final int MAGIC = 0x4A445553; // "JDUS"
+    private static final int DICTIONARY_MAGIC = 0x4A444944; // "JDID"
+    private static final int[] NO_IDS = new int[0];
+    private static final String FORMAT_FILE_NAME = "format";
+    // directories of fingerprints kept besides the current one
+    private static final int KEPT_PREVIOUS_FINGERPRINTS = 2;
+
+    private final DeprecatedApi deprecatedApi;
+    private final ApiDictionary apiDictionary;
+    private final boolean includePluginLibraries;
+    private final Path directory;
+    private final Path dictionaryFile;
+    // ids of the dictionary file by id in the dictionary of this run, -1 if not in the file yet, and the reverse
+    private int[] fileIdsByRunId = NO_IDS;
+    private int[] runIdsByFileId = NO_IDS;
+    private int fileIdCount;
+    private boolean dictionaryLoaded;
+
+    public ScanResultCache(File cacheDirectory, DeprecatedApi deprecatedApi, boolean includePluginLibraries) {
+        super();
+        this.deprecatedApi = deprecatedApi;
+        this.apiDictionary = deprecatedApi.getApiDictionary();
+        this.includePluginLibraries = includePluginLibraries;
+        this.directory = cacheDirectory.toPath().resolve("usages")
+                .resolve(getFingerprint(deprecatedApi, includePluginLibraries));
+        this.dictionaryFile = directory.resolve("dictionary.bin");
+        deleteUnusedDirectories();
+    }
+
+    /**
+     * Deletes the results of the previous formats, which are never read again, and those of the fingerprints
+     * which have not been used recently, such as those of previous versions of core.
+     */
+    private void deleteUnusedDirectories() {
+        final Path usagesDirectory = directory.getParent();
+        if (Files.notExists(usagesDirectory)) {
+            return;
+        }
+        try (Stream<Path> directories = Files.list(usagesDirectory)) {
+            // the last use of a directory is the modification time of its format file
+            final Path formatFile = directory.resolve(FORMAT_FILE_NAME);
+            if (Files.exists(formatFile)) {
+                Files.setLastModifiedTime(formatFile, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+            final List<Path> previousFingerprints = new ArrayList<>();
+            for (Path otherDirectory : (Iterable<Path>) directories::iterator) {
+                if (!Files.isDirectory(otherDirectory) || otherDirectory.equals(directory)) {
+                    continue;
+                }
+                if (isCurrentFormat(otherDirectory)) {
+                    previousFingerprints.add(otherDirectory);
+                } else {
+                    System.out.println("Deleting cached scan results of a previous format in " + otherDirectory);
+                    FileUtils.deleteDirectory(otherDirectory.toFile());
+                }
+            }
+            final Map<Path, FileTime> lastUses = new HashMap<>();
+            for (Path previousFingerprint : previousFingerprints) {
+                lastUses.put(previousFingerprint,
+                        Files.getLastModifiedTime(previousFingerprint.resolve(FORMAT_FILE_NAME)));
+            }
+            previousFingerprints.sort(Comparator.comparing(lastUses::get, Comparator.reverseOrder()));
+            for (Path unusedDirectory : previousFingerprints.subList(
+                    Math.min(KEPT_PREVIOUS_FINGERPRINTS, previousFingerprints.size()), previousFingerprints.size())) {
+                System.out.println("Deleting cached scan results not used recently in " + unusedDirectory);
+                FileUtils.deleteDirectory(unusedDirectory.toFile());
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to delete unused cached scan results because " + e.toString());
+        }
+    }
+
+    private static boolean isCurrentFormat(Path directory) throws IOException {
+        final Path formatFile = directory.resolve(FORMAT_FILE_NAME);
+        return Files.exists(formatFile) && String.valueOf(FORMAT_VERSION)
+                .equals(new String(Files.readAllBytes(formatFile), StandardCharsets.UTF_8).trim());
+    }
+
+    private synchronized void createDirectory() throws IOException {
+        final Path formatFile = directory.resolve(FORMAT_FILE_NAME);
+        if (Files.notExists(formatFile)) {
+            Files.createDirectories(directory);
+            Files.write(formatFile, String.valueOf(FORMAT_VERSION).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String getFingerprint(DeprecatedApi deprecatedApi, boolean includePluginLibraries) {
+        final Options options = Options.get();
+        final MessageDigest messageDigest = DigestUtils.getSha256Digest();
+        update(messageDigest, "format " + FORMAT_VERSION);
+        update(messageDigest, "includePluginLibraries " + includePluginLibraries);
+        update(messageDigest, "includeJavaCoreClasses " + options.includeJavaCoreClasses);
+        update(messageDigest, "onlyIncludeSpecified " + options.onlyIncludeSpecified);
+        update(messageDigest, "onlyIncludeJenkinsClasses " + options.onlyIncludeJenkinsClasses);
+        update(messageDigest, "classes", deprecatedApi.getClasses());
+        update(messageDigest, "methods", deprecatedApi.getMethods());
+        update(messageDigest, "fields", deprecatedApi.getFields());
+        final ClassHierarchy classHierarchy = deprecatedApi.getClassHierarchy();
+        update(messageDigest, "hierarchy " + classHierarchy.size());
+        for (int id = 0; id < classHierarchy.size(); id++) {
+            // sorted, the supertypes merged from several core versions being in the order the cores were analyzed
+            final Set<String> superTypes = new TreeSet<>();
+            for (int superTypeId : classHierarchy.getSuperTypeIds(id)) {
+                superTypes.add(classHierarchy.getName(superTypeId));
+            }
+            final StringBuilder line = new StringBuilder(classHierarchy.getName(id));
+            for (String superType : superTypes) {
+                line.append(' ').append(superType);
+            }
+            update(messageDigest, line.toString());
+        }
+        if (options.additionalClassesFile != null) {
+            update(messageDigest, "additionalClasses", Options.getAdditionalClasses());
+        }
+        if (options.additionalMethodsFile != null) {
+            update(messageDigest, "additionalMethods", Options.getAdditionalMethodNames());
+        }
+        if (options.additionalFieldsFile != null) {
+            update(messageDigest, "additionalFields", Options.getAdditionalFields());
+        }
+        return Hex.encodeHexString(messageDigest.digest());
+    }
+
+    private static void update(MessageDigest messageDigest, String value) {
+        messageDigest.update(value.getBytes(StandardCharsets.UTF_8));
+        messageDigest.update((byte) '\n');
+    }
+
+    private static void update(MessageDigest messageDigest, String name, Collection<String> values) {
+        update(messageDigest, name + ' ' + values.size());
+        for (String value : new TreeSet<>(values)) {
+            update(messageDigest, value);
+        }
+    }
+
+    private static void update(MessageDigest messageDigest, String name, Map<String, Set<String>> values) {
+        update(messageDigest, name + ' ' + values.size());
+        for (Map.Entry<String, Set<String>> entry : new TreeMap<>(values).entrySet()) {
+            update(messageDigest, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns true if the usages of this plugin file have already been found, without reading them.
+     */
+    public boolean contains(JenkinsFile plugin) {
+        final Path file = getFile(plugin);
+        return file != null && Files.exists(file);
+    }
+
+    /**
+     * Returns the usages previously found in this plugin file, or null if the plugin has not been scanned yet.
+     */
+    public DeprecatedUsage load(JenkinsFile plugin) {
+        final Path file = getFile(plugin);
+        if (file == null || Files.notExists(file)) {
+            return null;
+        }
+        loadDictionary();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC) {
+                return null;
+            }
+            final DeprecatedUsage deprecatedUsage = new DeprecatedUsage(plugin.getName(), plugin.getVersion(),
+                    deprecatedApi, includePluginLibraries);
+            deprecatedUsage.addUsages(toRunIds(readIds(input)), toRunIds(readIds(input)), toRunIds(readIds(input)));
+            deprecatedUsage.addUnresolved(toRunIds(readIds(input)), toRunIds(readIds(input)),
+                    toRunSuperTypeIds(readIds(input)));
+            return deprecatedUsage;
+        } catch (IOException e) {
+            System.out.println("Ignoring cached scan result of " + plugin.getName() + " because " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Records the usages found in this plugin file, so that it is not scanned again by the next runs.
+     */
+    public void save(JenkinsFile plugin, DeprecatedUsage deprecatedUsage) {
+        final Path file = getFile(plugin);
+        if (file == null) {
+            return;
+        }
+        loadDictionary();
+        try {
+            createDirectory();
+            // the names of the ids are in the dictionary file before any result refers to them
+            final int[] classIds = toFileIds(deprecatedUsage.getClassIds());
+            final int[] methodIds = toFileIds(deprecatedUsage.getMethodIds());
+            final int[] fieldIds = toFileIds(deprecatedUsage.getFieldIds());
+            final int[] unresolvedMethodIds = toFileIds(deprecatedUsage.getUnresolvedMethodIds());
+            final int[] unresolvedFieldIds = toFileIds(deprecatedUsage.getUnresolvedFieldIds());
+            final int[] superTypeIds = toFileSuperTypeIds(deprecatedUsage.getSuperTypeIds());
+            AtomicFiles.write(file, fileOutput -> {
+                try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput))) {
+                    output.writeInt(MAGIC);
+                    writeIds(output, classIds);
+                    writeIds(output, methodIds);
+                    writeIds(output, fieldIds);
+                    writeIds(output, unresolvedMethodIds);
+                    writeIds(output, unresolvedFieldIds);
+                    writeIds(output, superTypeIds);
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("Failed to cache scan result of " + plugin.getName() + " because " + e.toString());
+        }
+    }
+
+    private Path getFile(JenkinsFile plugin) {
+        // without digest, there is no way to know if the plugin file has changed
+        final String digest = plugin.getDigest();
+        if (digest == null) {
+            return null;
+        }
+        return directory.resolve(digest + ".bin");
+    }
+
+    /**
+     * Reads the names of the dictionary file, once, giving them ids in the dictionary of this run.
+     */
+    private synchronized void loadDictionary() {
+        if (dictionaryLoaded) {
+            return;
+        }
+        dictionaryLoaded = true;
+        if (Files.notExists(dictionaryFile)) {
+            return;
+        }
+        try {
+            final byte[] bytes = Files.readAllBytes(dictionaryFile);
+            final DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (input.readInt() != DICTIONARY_MAGIC) {
+                throw new IOException("Invalid dictionary file " + dictionaryFile);
+            }
+            while (input.available() > 0) {
+                addFileId(apiDictionary.getId(input.readUTF()));
+            }
+        } catch (IOException e) {
+            // the results cannot be read without the names of their ids
+            System.out.println("Discarding cached scan results in " + directory + " because " + e.toString());
+            fileIdsByRunId = NO_IDS;
+            runIdsByFileId = NO_IDS;
+            fileIdCount = 0;
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            } catch (IOException deleteException) {
+                System.out.println("Failed to discard cached scan results because " + deleteException.toString());
+            }
+        }
+    }
+
+    private void addFileId(int runId) {
+        if (fileIdCount == runIdsByFileId.length) {
+            runIdsByFileId = Arrays.copyOf(runIdsByFileId, Math.max(1024, fileIdCount * 2));
+        }
+        runIdsByFileId[fileIdCount] = runId;
+        if (runId >= fileIdsByRunId.length) {
+            final int previousLength = fileIdsByRunId.length;
+            fileIdsByRunId = Arrays.copyOf(fileIdsByRunId, Math.max(runId + 1, Math.max(1024, previousLength * 2)));
+            Arrays.fill(fileIdsByRunId, previousLength, fileIdsByRunId.length, -1);
+        }
+        fileIdsByRunId[runId] = fileIdCount++;
+    }
+
+    private synchronized IntSet toRunIds(int[] fileIds) throws IOException {
+        final IntSet runIds = new IntSet();
+        for (int fileId : fileIds) {
+            runIds.add(toRunId(fileId));
+        }
+        return runIds;
+    }
+
+    private int toRunId(int fileId) throws IOException {
+        if (fileId < 0 || fileId >= fileIdCount) {
+            throw new IOException("Unknown id " + fileId);
+        }
+        return runIdsByFileId[fileId];
+    }
+
+    /**
+     * Returns the ids of the dictionary file, appending the names which are not in it yet.
+     */
+    private synchronized int[] toFileIds(IntSet runIds) throws IOException {
+        final List<Integer> newRunIds = new ArrayList<>();
+        for (int i = 0; i < runIds.size(); i++) {
+            final int runId = runIds.get(i);
+            if (runId >= fileIdsByRunId.length || fileIdsByRunId[runId] < 0) {
+                newRunIds.add(runId);
+            }
+        }
+        if (!newRunIds.isEmpty()) {
+            appendToDictionary(newRunIds);
+        }
+        final int[] fileIds = new int[runIds.size()];
+        for (int i = 0; i < fileIds.length; i++) {
+            fileIds[i] = fileIdsByRunId[runIds.get(i)];
+        }
+        return fileIds;
+    }
+
+    /**
+     * Returns the supertypes of the classes of a plugin with the ids of this run, keeping the counts of supertypes.
+     *
+     * @see DeprecatedUsage#getSuperTypeIds()
+     */
+    private synchronized int[] toRunSuperTypeIds(int[] fileSuperTypeIds) throws IOException {
+        final int[] runSuperTypeIds = fileSuperTypeIds.clone();
+        int index = 0;
+        while (index < runSuperTypeIds.length) {
+            if (index + 1 >= runSuperTypeIds.length || runSuperTypeIds[index + 1] < 0
+                    || index + 2 + runSuperTypeIds[index + 1] > runSuperTypeIds.length) {
+                throw new IOException("Invalid supertypes at " + index);
+            }
+            final int end = index + 2 + runSuperTypeIds[index + 1];
+            runSuperTypeIds[index] = toRunId(runSuperTypeIds[index]);
+            for (int i = index + 2; i < end; i++) {
+                runSuperTypeIds[i] = toRunId(runSuperTypeIds[i]);
+            }
+            index = end;
+        }
+        return runSuperTypeIds;
+    }
+
+    /**
+     * Returns the supertypes of the classes of a plugin with the ids of the dictionary file, keeping the counts
+     * of supertypes.
+     */
+    private synchronized int[] toFileSuperTypeIds(int[] runSuperTypeIds) throws IOException {
+        final IntSet runIds = new IntSet();
+        int index = 0;
+        while (index < runSuperTypeIds.length) {
+            final int end = index + 2 + runSuperTypeIds[index + 1];
+            runIds.add(runSuperTypeIds[index]);
+            for (int i = index + 2; i < end; i++) {
+                runIds.add(runSuperTypeIds[i]);
+            }
+            index = end;
+        }
+        // appends the names which are not in the dictionary file yet
+        toFileIds(runIds);
+        final int[] fileSuperTypeIds = runSuperTypeIds.clone();
+        index = 0;
+        while (index < fileSuperTypeIds.length) {
+            final int end = index + 2 + fileSuperTypeIds[index + 1];
+            fileSuperTypeIds[index] = fileIdsByRunId[fileSuperTypeIds[index]];
+            for (int i = index + 2; i < end; i++) {
+                fileSuperTypeIds[i] = fileIdsByRunId[fileSuperTypeIds[i]];
+            }
+            index = end;
+        }
+        return fileSuperTypeIds;
+    }
+
+    private void appendToDictionary(List<Integer> newRunIds) throws IOException {
+        try (FileChannel channel = FileChannel.open(dictionaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            final long size = channel.size();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream output = new DataOutputStream(bytes);
+            if (size == 0) {
+                output.writeInt(DICTIONARY_MAGIC);
+            }
+            for (int runId : newRunIds) {
+                output.writeUTF(apiDictionary.getName(runId));
+            }
+            try {
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                long position = size;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            } catch (IOException e) {
+                // a partial name would shift the names appended after it
+                channel.truncate(size);
+                throw e;
+            }
+        }
+        for (int runId : newRunIds) {
+            addFileId(runId);
+        }
+    }
+
+    private static int[] readIds(DataInputStream input) throws IOException {
+        final int[] ids = new int[input.readInt()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = input.readInt();
+        }
+        return ids;
+    }
+
+    private static void writeIds(DataOutputStream output, int[] ids) throws IOException {
+        output.writeInt(ids.length);
+        for (int id : ids) {
+            output.writeInt(id);
+        }
+    }
+}
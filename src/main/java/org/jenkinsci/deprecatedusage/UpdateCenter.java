@@ -3,25 +3,80 @@ package org.jenkinsci.deprecatedusage;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
+import java.io.Reader;
 import java.security.MessageDigest;
-import java.util.ArrayList;
 import java.util.Base64;
-import java.util.List;
+import java.util.function.Consumer;
 
 public class UpdateCenter {
-    private final JenkinsFile core;
-    private final List<JenkinsFile> plugins = new ArrayList<>();
+    /**
+     * Parses the metadata of an update center while it is read, calling the listeners with the core and with each
+     * plugin as soon as they are parsed, so that only one plugin at a time is kept in memory.
+     * The JSONP wrapper of update-center.json is skipped.
+     */
+    public static void parse(Reader reader, Consumer<JenkinsFile> coreListener, Consumer<JenkinsFile> pluginListener)
+            throws JSONException {
+        final JSONTokener tokener = new JSONTokener(reader);
+        // "updateCenter.post(" before the document
+        if (tokener.skipTo('{') == 0) {
+            throw tokener.syntaxError("Update center metadata not found");
+        }
+        tokener.next();
+        readEntries(tokener, (key, valueTokener) -> {
+            if ("core".equals(key)) {
+                coreListener.accept(parse(nextObject(valueTokener)));
+            } else if ("plugins".equals(key)) {
+                if (valueTokener.nextClean() != '{') {
+                    throw valueTokener.syntaxError("A JSONObject text must begin with '{'");
+                }
+                readEntries(valueTokener, (pluginId, pluginTokener) -> pluginListener.accept(parse(nextObject(pluginTokener))));
+            } else {
+                // other metadata, such as warnings and signature
+                valueTokener.nextValue();
+            }
+        });
+    }
+
+    private interface EntryReader {
+        /**
+         * Reads the value of an entry from the tokener.
+         */
+        void read(String key, JSONTokener tokener) throws JSONException;
+    }
+
+    /**
+     * Reads the entries of an object, after its opening brace, up to its closing brace.
+     */
+    private static void readEntries(JSONTokener tokener, EntryReader entryReader) throws JSONException {
+        if (tokener.nextClean() == '}') {
+            return;
+        }
+        tokener.back();
+        while (true) {
+            final String key = tokener.nextValue().toString();
+            if (tokener.nextClean() != ':') {
+                throw tokener.syntaxError("Expected a ':' after a key");
+            }
+            entryReader.read(key, tokener);
+            switch (tokener.nextClean()) {
+                case ',':
+                    break;
+                case '}':
+                    return;
+                default:
+                    throw tokener.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
 
-    public UpdateCenter(JSONObject metadata) {
-        JSONObject jsonCore = metadata.getJSONObject("core");
-        core = parse(jsonCore);
-        JSONObject jsonPlugins = metadata.getJSONObject("plugins");
-        for (Object pluginId : jsonPlugins.keySet()) {
-            JSONObject jsonPlugin = jsonPlugins.getJSONObject(pluginId.toString());
-            JenkinsFile plugin = parse(jsonPlugin);
-            plugins.add(plugin);
+    private static JSONObject nextObject(JSONTokener tokener) throws JSONException {
+        final Object value = tokener.nextValue();
+        if (!(value instanceof JSONObject)) {
+            throw tokener.syntaxError("A JSONObject text must begin with '{'");
         }
+        return (JSONObject) value;
     }
 
     private static JenkinsFile parse(JSONObject jsonObject) throws JSONException {
@@ -47,12 +102,4 @@ public class UpdateCenter {
         return new JenkinsFile(jsonObject.getString("name"), jsonObject.getString("version"),
                 jsonObject.getString("url"), wiki, messageDigest, digest);
     }
-
-    public JenkinsFile getCore() {
-        return core;
-    }
-
-    public List<JenkinsFile> getPlugins() {
-        return plugins;
-    }
 }
@@ -0,0 +1,104 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the metadata of each update center between runs, and revalidates it with ETag and If-Modified-Since,
+ * so that it is only downloaded again when it has changed.
+ * <p>
+ * The document of each update center is stored by digest of its URL, next to the validators given by the server.
+ */
+public class UpdateCenterCache {
+    private final Path directory;
+
+    public UpdateCenterCache(File cacheDirectory) {
+        super();
+        this.directory = cacheDirectory.toPath().resolve("update-centers");
+    }
+
+    /**
+     * Parses the metadata of an update center, from the cached document if it has not changed, or else while
+     * it is downloaded.
+     *
+     * @see UpdateCenter#parse(Reader, Consumer, Consumer)
+     */
+    public void parse(URL url, Consumer<JenkinsFile> coreListener, Consumer<JenkinsFile> pluginListener)
+            throws IOException {
+        final String key = DigestUtils.sha256Hex(url.toString());
+        final Path documentFile = directory.resolve(key + ".json");
+        final Path validatorsFile = directory.resolve(key + ".validators.json");
+        final URLConnection connection = url.openConnection();
+        if (connection instanceof HttpURLConnection) {
+            final JSONObject validators = readValidators(documentFile, validatorsFile);
+            if (validators != null) {
+                if (validators.has("ETag")) {
+                    connection.setRequestProperty("If-None-Match", validators.getString("ETag"));
+                }
+                if (validators.has("Last-Modified")) {
+                    connection.setRequestProperty("If-Modified-Since", validators.getString("Last-Modified"));
+                }
+                if (((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    System.out.println("Using cached update center metadata of " + url);
+                    try (Reader reader = Files.newBufferedReader(documentFile, StandardCharsets.UTF_8)) {
+                        UpdateCenter.parse(reader, coreListener, pluginListener);
+                    }
+                    return;
+                }
+            }
+        }
+        final String etag = connection.getHeaderField("ETag");
+        final String lastModified = connection.getHeaderField("Last-Modified");
+        if (etag == null && lastModified == null) {
+            // the document could not be revalidated
+            try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+                UpdateCenter.parse(reader, coreListener, pluginListener);
+            }
+            return;
+        }
+        Files.createDirectories(directory);
+        // the validators of the previous document must never be used with the new one
+        Files.deleteIfExists(validatorsFile);
+        // the document is written while it is parsed, and only kept if it is complete
+        AtomicFiles.write(documentFile, output -> {
+            try (InputStream input = new TeeInputStream(connection.getInputStream(), output);
+                 Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+                UpdateCenter.parse(reader, coreListener, pluginListener);
+                // the end of the JSONP wrapper
+                IOUtils.skip(input, Long.MAX_VALUE);
+            }
+        });
+        final JSONObject validators = new JSONObject();
+        validators.putOpt("ETag", etag);
+        validators.putOpt("Last-Modified", lastModified);
+        AtomicFiles.write(validatorsFile, validators.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JSONObject readValidators(Path documentFile, Path validatorsFile) {
+        if (Files.notExists(documentFile) || Files.notExists(validatorsFile)) {
+            return null;
+        }
+        try {
+            return new JSONObject(new String(Files.readAllBytes(validatorsFile), StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            System.out.println("Ignoring cached update center metadata because " + e.toString());
+            return null;
+        }
+    }
+}
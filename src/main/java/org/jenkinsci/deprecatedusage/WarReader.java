@@ -4,27 +4,90 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
+/**
+ * Reads the classes of a war, in WEB-INF/classes/ and in the jars of WEB-INF/lib/.
+ * <p>
+ * With the {@link Options#memoryMap} option, the war is memory-mapped and read through its central directory,
+ * so that the stored jars are read in place. Otherwise, or if the war cannot be mapped, it is read with ZipFile.
+ */
 public class WarReader implements Closeable {
     private final File warFile;
+    private final ZipBuffer zipBuffer;
     private final ZipFile zipFile;
     private final Enumeration<? extends ZipEntry> entries;
     private final boolean scanOnlyJarOfPlugin;
+    private final Predicate<String> entryFilter;
     private ZipEntry entry;
+    private int index = -1;
     private JarReader jarReader;
+    // stream of the current class file in WEB-INF/classes/, closed when moving to the next entry
+    private InputStream entryInputStream;
 
     public WarReader(File warFile, boolean scanOnlyJarOfPlugin) throws IOException {
+        this(warFile, scanOnlyJarOfPlugin, fileName -> true);
+    }
+
+    /**
+     * @param entryFilter selects the jar files in WEB-INF/lib/ and the class files in WEB-INF/classes/ to read,
+     * by their names in the war
+     */
+    public WarReader(File warFile, boolean scanOnlyJarOfPlugin, Predicate<String> entryFilter) throws IOException {
         super();
         this.warFile = warFile;
-        this.zipFile = new ZipFile(warFile);
-        this.entries = zipFile.entries();
+        this.zipBuffer = Options.get().memoryMap ? map(warFile) : null;
+        this.zipFile = zipBuffer == null ? new ZipFile(warFile) : null;
+        this.entries = zipFile == null ? null : zipFile.entries();
         this.scanOnlyJarOfPlugin = scanOnlyJarOfPlugin;
+        this.entryFilter = entryFilter;
+    }
+
+    /**
+     * Returns the names of the jar files in WEB-INF/lib/ of a war.
+     */
+    public static List<String> getJarNames(File warFile) throws IOException {
+        final List<String> jarNames = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(warFile)) {
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                final String fileName = entries.nextElement().getName();
+                if (isJar(fileName)) {
+                    jarNames.add(fileName);
+                }
+            }
+        }
+        return jarNames;
+    }
+
+    private static ZipBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // the mapping stays valid after the channel is closed, until the buffer is garbage collected
+            return new ZipBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } catch (ZipException e) {
+            return null;
+        }
+    }
+
+    private static boolean isJar(String fileName) {
+        return fileName.startsWith("WEB-INF/lib/") && fileName.endsWith(".jar");
     }
 
     public String nextClass() throws IOException {
+        closeEntry();
         if (jarReader != null) {
             final String fileName = jarReader.nextClass();
             if (fileName != null) {
@@ -34,14 +97,16 @@ public class WarReader implements Closeable {
                 jarReader = null;
             }
         }
-        while (entries.hasMoreElements()) {
-            entry = entries.nextElement();
-            final String fileName = entry.getName();
-            if (fileName.startsWith("WEB-INF/lib/") && fileName.endsWith(".jar")) {
+        String fileName = nextEntry();
+        for (; fileName != null; fileName = nextEntry()) {
+            if (!entryFilter.test(fileName)) {
+                continue;
+            }
+            if (isJar(fileName)) {
                 final boolean shouldScanJar = !scanOnlyJarOfPlugin || warFile.getName()
                         .equals(fileName.replace("WEB-INF/lib/", "").replace(".jar", ".hpi"));
                 if (shouldScanJar) {
-                    jarReader = new JarReader(zipFile.getInputStream(entry));
+                    jarReader = openJar();
                     return this.nextClass();
                 }
             } else if (fileName.startsWith("WEB-INF/classes/") && fileName.endsWith(".class")) {
@@ -51,15 +116,76 @@ public class WarReader implements Closeable {
         return null;
     }
 
+    private String nextEntry() {
+        if (zipBuffer != null) {
+            return ++index < zipBuffer.size() ? zipBuffer.getName(index) : null;
+        }
+        if (entries.hasMoreElements()) {
+            entry = entries.nextElement();
+            return entry.getName();
+        }
+        return null;
+    }
+
+    private JarReader openJar() throws IOException {
+        if (zipBuffer != null) {
+            final ByteBuffer storedJar = zipBuffer.getStoredData(index);
+            if (storedJar != null) {
+                try {
+                    return new JarReader(storedJar);
+                } catch (ZipException e) {
+                    // read below as a stream
+                }
+            }
+            // the jar is copied in memory, and its inflater released right away
+            try (InputStream input = zipBuffer.getInputStream(index)) {
+                return new JarReader(input, zipBuffer.getSize(index));
+            }
+        }
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            return new JarReader(input, entry.getSize());
+        }
+    }
+
     public InputStream getInputStream() throws IOException {
         if (jarReader != null) {
             return jarReader.getInputStream();
         }
-        return zipFile.getInputStream(entry);
+        if (entryInputStream == null) {
+            entryInputStream = zipBuffer != null ? zipBuffer.getInputStream(index) : zipFile.getInputStream(entry);
+        }
+        return entryInputStream;
+    }
+
+    private void closeEntry() throws IOException {
+        if (entryInputStream != null) {
+            entryInputStream.close();
+            entryInputStream = null;
+        }
+    }
+
+    /**
+     * Returns the uncompressed size of the current class file, or -1 if it is not known.
+     */
+    public long getSize() {
+        if (jarReader != null) {
+            return jarReader.getSize();
+        }
+        if (zipBuffer != null) {
+            return zipBuffer.getSize(index);
+        }
+        return entry.getSize();
     }
 
     @Override
     public void close() throws IOException {
-        zipFile.close();
+        closeEntry();
+        if (jarReader != null) {
+            jarReader.close();
+            jarReader = null;
+        }
+        if (zipFile != null) {
+            zipFile.close();
+        }
     }
 }
@@ -0,0 +1,122 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evicts from the work directory the versions of core and plugins which are no longer in any update center,
+ * to keep the work directory within an age or size budget.
+ * <p>
+ * Downloads are stored in work/&lt;name&gt;/&lt;version&gt;/, and the modification time of the .analyzed file of each
+ * version directory is the time of its last analysis: versions are evicted least recently analyzed first, the ones
+ * never analyzed by the time of their directory. The cache directory and the directories starting with a dot
+ * are left alone.
+ */
+public class WorkCache {
+    private final Path workDirectory;
+    private final Path cacheDirectory;
+
+    public WorkCache(File workDirectory, File cacheDirectory) {
+        super();
+        this.workDirectory = workDirectory.toPath().toAbsolutePath();
+        this.cacheDirectory = cacheDirectory.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Deletes the versions which are not referenced and have not been analyzed for longer than the maximum age,
+     * then the least recently analyzed versions which are not referenced while the work directory is larger
+     * than the maximum size.
+     *
+     * @param referencedFiles files of the update centers, which are never deleted
+     * @param maxAgeDays maximum age in days, or 0 for no limit
+     * @param maxSizeMegabytes maximum size in MB, or 0 for no limit
+     */
+    public void evict(Collection<JenkinsFile> referencedFiles, int maxAgeDays, long maxSizeMegabytes)
+            throws IOException {
+        if (Files.notExists(workDirectory)) {
+            return;
+        }
+        final Set<Path> referencedDirectories = new HashSet<>();
+        for (JenkinsFile file : referencedFiles) {
+            referencedDirectories.add(file.getFile().toPath().getParent());
+        }
+        long totalSize = 0;
+        final List<VersionDirectory> unreferencedDirectories = new ArrayList<>();
+        for (Path nameDirectory : listDirectories(workDirectory)) {
+            for (Path versionDirectory : listDirectories(nameDirectory)) {
+                final long size = FileUtils.sizeOfDirectory(versionDirectory.toFile());
+                totalSize += size;
+                if (!referencedDirectories.contains(versionDirectory)) {
+                    unreferencedDirectories.add(new VersionDirectory(versionDirectory, size,
+                            getLastAnalyzed(versionDirectory)));
+                }
+            }
+        }
+        unreferencedDirectories.sort(Comparator.comparingLong(directory -> directory.lastAnalyzed));
+
+        final long minLastAnalyzed = maxAgeDays > 0
+                ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxAgeDays) : Long.MIN_VALUE;
+        final long maxSize = maxSizeMegabytes > 0 ? maxSizeMegabytes * 1024 * 1024 : Long.MAX_VALUE;
+        int evictedCount = 0;
+        long evictedSize = 0;
+        for (VersionDirectory directory : unreferencedDirectories) {
+            if (directory.lastAnalyzed >= minLastAnalyzed && totalSize - evictedSize <= maxSize) {
+                break;
+            }
+            FileUtils.deleteDirectory(directory.path.toFile());
+            final Path nameDirectory = directory.path.getParent();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(nameDirectory)) {
+                if (!entries.iterator().hasNext()) {
+                    Files.delete(nameDirectory);
+                }
+            }
+            evictedCount++;
+            evictedSize += directory.size;
+        }
+        System.out.printf("Evicted %d versions no longer in the update centers from %s, %.2f MiB out of %.2f MiB%n",
+                evictedCount, workDirectory, evictedSize / 1048576.0, totalSize / 1048576.0);
+        if (totalSize - evictedSize > maxSize) {
+            System.out.println("The files of the update centers are larger than the maximum size of " + workDirectory);
+        }
+    }
+
+    private static long getLastAnalyzed(Path versionDirectory) throws IOException {
+        // not the time of the directory itself, which changes with the download and verification files
+        final Path analyzedFile = versionDirectory.resolve(JenkinsFile.ANALYZED_FILE_NAME);
+        return Files.getLastModifiedTime(Files.exists(analyzedFile) ? analyzedFile : versionDirectory).toMillis();
+    }
+
+    private List<Path> listDirectories(Path directory) throws IOException {
+        final List<Path> directories = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory,
+                entry -> Files.isDirectory(entry) && !entry.getFileName().toString().startsWith(".")
+                        && !cacheDirectory.startsWith(entry.normalize()))) {
+            entries.forEach(directories::add);
+        }
+        return directories;
+    }
+
+    private static class VersionDirectory {
+        final Path path;
+        final long size;
+        final long lastAnalyzed;
+
+        VersionDirectory(Path path, long size, long lastAnalyzed) {
+            this.path = path;
+            this.size = size;
+            this.lastAnalyzed = lastAnalyzed;
+        }
+    }
+}
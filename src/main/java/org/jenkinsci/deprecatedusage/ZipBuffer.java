@@ -0,0 +1,236 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Zip archive in a buffer, read through its central directory: entries can be read in any order,
+ * and only the entries which are read are inflated.
+ * <p>
+ * ZIP64 archives are not supported, {@link ZipException} is thrown when they are found.
+ */
+public class ZipBuffer {
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private final ByteBuffer buffer;
+    private final String[] names;
+    private final int[] methods;
+    private final long[] compressedSizes;
+    private final long[] sizes;
+    private final long[] localHeaderOffsets;
+
+    public ZipBuffer(ByteBuffer buffer) throws ZipException {
+        super();
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        final int end = findEndOfCentralDirectory();
+        final int entryCount = getUnsignedShort(end + 10);
+        final long centralDirectoryOffset = getUnsignedInt(end + 16);
+        if (entryCount == 0xFFFF || centralDirectoryOffset == 0xFFFFFFFFL) {
+            throw new ZipException("ZIP64 archive");
+        }
+        names = new String[entryCount];
+        methods = new int[entryCount];
+        compressedSizes = new long[entryCount];
+        sizes = new long[entryCount];
+        localHeaderOffsets = new long[entryCount];
+        int offset = checkOffset(centralDirectoryOffset, CENTRAL_DIRECTORY_HEADER_SIZE);
+        for (int i = 0; i < entryCount; i++) {
+            if (this.buffer.getInt(offset) != CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new ZipException("Invalid central directory header");
+            }
+            methods[i] = getUnsignedShort(offset + 10);
+            compressedSizes[i] = getUnsignedInt(offset + 20);
+            sizes[i] = getUnsignedInt(offset + 24);
+            final int nameLength = getUnsignedShort(offset + 28);
+            final int extraLength = getUnsignedShort(offset + 30);
+            final int commentLength = getUnsignedShort(offset + 32);
+            localHeaderOffsets[i] = getUnsignedInt(offset + 42);
+            if (compressedSizes[i] == 0xFFFFFFFFL || sizes[i] == 0xFFFFFFFFL || localHeaderOffsets[i] == 0xFFFFFFFFL) {
+                throw new ZipException("ZIP64 entry");
+            }
+            checkOffset(offset, CENTRAL_DIRECTORY_HEADER_SIZE + nameLength);
+            final byte[] name = new byte[nameLength];
+            final ByteBuffer nameBuffer = this.buffer.duplicate();
+            nameBuffer.position(offset + CENTRAL_DIRECTORY_HEADER_SIZE);
+            nameBuffer.get(name);
+            names[i] = new String(name, StandardCharsets.UTF_8);
+            offset = checkOffset((long) offset + CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength,
+                    i + 1 < entryCount ? CENTRAL_DIRECTORY_HEADER_SIZE : 0);
+        }
+    }
+
+    private int findEndOfCentralDirectory() throws ZipException {
+        // the end of central directory record is followed by a comment of at most 65535 bytes
+        final int last = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+        for (int offset = last; offset >= 0 && offset >= last - 0xFFFF; offset--) {
+            if (buffer.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return offset;
+            }
+        }
+        throw new ZipException("End of central directory not found");
+    }
+
+    private int checkOffset(long offset, int length) throws ZipException {
+        if (offset < 0 || offset + length > buffer.limit()) {
+            throw new ZipException("Invalid offset in zip archive: " + offset);
+        }
+        return (int) offset;
+    }
+
+    private int getUnsignedShort(int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    private long getUnsignedInt(int offset) {
+        return buffer.getInt(offset) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Returns the number of entries, indexes being from 0 to size - 1.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Returns the uncompressed size of an entry.
+     */
+    public long getSize(int index) {
+        return sizes[index];
+    }
+
+    /**
+     * Returns the content of an entry, which is inflated while it is read.
+     */
+    public InputStream getInputStream(int index) throws IOException {
+        final ByteBuffer data = getData(index);
+        switch (methods[index]) {
+            case STORED:
+                return new ByteBufferInputStream(data);
+            case DEFLATED:
+                return new EntryInflaterInputStream(data);
+            default:
+                throw new ZipException("Unsupported compression method " + methods[index] + " for " + names[index]);
+        }
+    }
+
+    /**
+     * Returns the content of a stored entry without copying it, or null if the entry is compressed.
+     */
+    public ByteBuffer getStoredData(int index) throws ZipException {
+        return methods[index] == STORED ? getData(index) : null;
+    }
+
+    private ByteBuffer getData(int index) throws ZipException {
+        final int localHeaderOffset = checkOffset(localHeaderOffsets[index], LOCAL_HEADER_SIZE);
+        if (buffer.getInt(localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + names[index]);
+        }
+        // name and extra field lengths of the local header may differ from the ones of the central directory
+        final long dataOffset = (long) localHeaderOffset + LOCAL_HEADER_SIZE
+                + getUnsignedShort(localHeaderOffset + 26) + getUnsignedShort(localHeaderOffset + 28);
+        final int dataStart = checkOffset(dataOffset, 0);
+        checkOffset(dataStart, (int) Math.min(compressedSizes[index], Integer.MAX_VALUE));
+        final ByteBuffer data = buffer.duplicate();
+        data.position(dataStart);
+        data.limit(dataStart + (int) compressedSizes[index]);
+        return data.slice();
+    }
+
+    /**
+     * InputStream inflating a deflated entry, like the one of ZipFile.
+     */
+    private static class EntryInflaterInputStream extends InflaterInputStream {
+        private boolean eof;
+        private boolean closed;
+
+        EntryInflaterInputStream(ByteBuffer data) {
+            super(new ByteBufferInputStream(data), new Inflater(true), Math.max(1, Math.min(data.remaining(), 8192)));
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                // the inflater may need an extra dummy byte when there is no zlib header
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                // the inflater is not ended by InflaterInputStream when given to it
+                inf.end();
+            }
+            super.close();
+        }
+    }
+
+    /**
+     * InputStream reading the remaining bytes of a buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            super();
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            final int skipped = (int) Math.min(count, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
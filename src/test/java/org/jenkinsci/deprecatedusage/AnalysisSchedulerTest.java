@@ -0,0 +1,44 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+
+public class AnalysisSchedulerTest {
+    @Test
+    public void testMostExpensiveFirst() throws Exception {
+        // tasks are only run when the files are all scheduled, as when the threads of the executor are busy
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<String> analyzed = new ArrayList<>();
+        // cost of each file, such as its size
+        final Map<String, Long> costs = new HashMap<>();
+        costs.put("small", 1L);
+        costs.put("large", 100L);
+        costs.put("medium", 10L);
+        final AnalysisScheduler<String> scheduler = new AnalysisScheduler<>(tasks::add,
+                file -> costs.get(file.getName()), file -> {
+                    analyzed.add(file.getName());
+                    return file.getName();
+                });
+        final CompletableFuture<String> small = scheduler.schedule(newFile("small"));
+        final CompletableFuture<String> large = scheduler.schedule(newFile("large"));
+        final CompletableFuture<String> medium = scheduler.schedule(newFile("medium"));
+        tasks.forEach(Runnable::run);
+
+        assertEquals(Arrays.asList("large", "medium", "small"), analyzed);
+        assertEquals("small", small.get());
+        assertEquals("large", large.get());
+        assertEquals("medium", medium.get());
+    }
+
+    private static JenkinsFile newFile(String name) {
+        return new JenkinsFile(name, "1.0", "http://localhost/" + name + ".hpi", null, null, null);
+    }
+}
@@ -0,0 +1,26 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class ClassFileBufferTest {
+    @Test
+    public void testRead() throws IOException {
+        final byte[] content = new byte[200 * 1024];
+        new Random(1).nextBytes(content);
+        final ClassFileBuffer buffer = ClassFileBuffer.get();
+        // exact, unknown and wrong size hints
+        for (long sizeHint : new long[] {content.length, -1, 10, content.length * 2}) {
+            buffer.read(new ByteArrayInputStream(content), sizeHint);
+            assertArrayEquals(content, Arrays.copyOf(buffer.getBytes(), buffer.getLength()));
+        }
+        buffer.read(new ByteArrayInputStream(content, 0, 100), 100);
+        assertArrayEquals(Arrays.copyOf(content, 100), Arrays.copyOf(buffer.getBytes(), buffer.getLength()));
+    }
+}
@@ -0,0 +1,45 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ClassNameIndexTest {
+    @Test
+    public void testGet() {
+        ClassNameIndex index = new ClassNameIndex(Arrays.asList("hudson/model/Hudson", "hudson/util/RunList",
+                "jenkins/model/Jenkins$Café", "hudson/model/Hudson$CloudList"));
+        byte[] data = ClassNameIndex.encode("Lhudson/util/RunList;");
+        assertEquals("hudson/util/RunList", index.get(data, 1, data.length - 2));
+        assertNull(index.get(data, 0, data.length));
+        assertNull(index.get(data, 1, data.length - 3));
+
+        data = ClassNameIndex.encode("jenkins/model/Jenkins$Café");
+        assertEquals("jenkins/model/Jenkins$Café", index.get(data, 0, data.length));
+        data = ClassNameIndex.encode("hudson/model/Hudson");
+        assertEquals("hudson/model/Hudson", index.get(data, 0, data.length));
+        assertNull(index.get(data, 0, data.length - 1));
+
+        assertNull(new ClassNameIndex(Collections.emptyList()).get(data, 0, data.length));
+    }
+
+    @Test
+    public void testEncode() throws IOException {
+        for (String string : Arrays.asList("", "hudson/model/Hudson", "\u0000é€😀")) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream output = new DataOutputStream(bytes)) {
+                output.writeUTF(string);
+            }
+            byte[] expected = Arrays.copyOfRange(bytes.toByteArray(), 2, bytes.size());
+            assertArrayEquals(expected, ClassNameIndex.encode(string));
+        }
+    }
+}
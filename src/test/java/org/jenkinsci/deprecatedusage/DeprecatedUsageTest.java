@@ -0,0 +1,317 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeprecatedUsageTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testInheritedFromCore() throws IOException {
+        final Map<String, byte[]> coreClasses = new LinkedHashMap<>();
+        coreClasses.put("hudson/model/Job.class", newClass("hudson/model/Job", "java/lang/Object", cw -> {
+            cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_DEPRECATED, "getOldThing", "()V", null, null);
+            cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_DEPRECATED, "oldField", "I", null, null);
+        }));
+        coreClasses.put("hudson/model/AbstractProject.class",
+                newClass("hudson/model/AbstractProject", "hudson/model/Job", cw -> { }));
+        final File core = newWar("jenkins.war", "WEB-INF/lib/jenkins-core.jar", coreClasses);
+
+        final Map<String, byte[]> pluginClasses = new LinkedHashMap<>();
+        pluginClasses.put("org/jenkinsci/plugins/test/MyProject.class",
+                newClass("org/jenkinsci/plugins/test/MyProject", "hudson/model/AbstractProject", cw -> { }));
+        pluginClasses.put("org/jenkinsci/plugins/test/Caller.class",
+                newClass("org/jenkinsci/plugins/test/Caller", "java/lang/Object", cw -> {
+                    final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "call", "()V", null, null);
+                    mv.visitCode();
+                    mv.visitInsn(Opcodes.ACONST_NULL);
+                    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "hudson/model/AbstractProject", "getOldThing", "()V", false);
+                    mv.visitInsn(Opcodes.ACONST_NULL);
+                    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "org/jenkinsci/plugins/test/MyProject", "getOldThing", "()V", false);
+                    mv.visitInsn(Opcodes.ACONST_NULL);
+                    mv.visitFieldInsn(Opcodes.GETFIELD, "org/jenkinsci/plugins/test/MyProject", "oldField", "I");
+                    mv.visitInsn(Opcodes.POP);
+                    mv.visitInsn(Opcodes.RETURN);
+                    mv.visitMaxs(0, 0);
+                    mv.visitEnd();
+                }));
+        final File plugin = newWar("test.hpi", "WEB-INF/lib/test.jar", pluginClasses);
+
+        final DeprecatedApi deprecatedApi = new DeprecatedApi();
+        deprecatedApi.analyze(core, Runnable::run);
+        deprecatedApi.freeze();
+        final DeprecatedUsage deprecatedUsage = new DeprecatedUsage("test", "1.0", deprecatedApi, false);
+        deprecatedUsage.analyze(plugin);
+
+        assertEquals(Collections.emptySet(), deprecatedUsage.getClasses());
+        assertEquals(Collections.singleton("hudson/model/Job#getOldThing()V"), deprecatedUsage.getMethods());
+        assertEquals(Collections.singleton("hudson/model/Job#oldField"), deprecatedUsage.getFields());
+    }
+
+    @Test
+    public void testInheritedFromDependency() throws IOException {
+        final Map<String, byte[]> coreClasses = new LinkedHashMap<>();
+        coreClasses.put("hudson/model/Job.class", newClass("hudson/model/Job", "java/lang/Object", cw -> {
+            cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_DEPRECATED, "getOldThing", "()V", null, null);
+            cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_DEPRECATED, "oldField", "I", null, null);
+        }));
+        final File core = newWar("jenkins.war", "WEB-INF/lib/jenkins-core.jar", coreClasses);
+        final File dependency = newWar("dependency.hpi", "WEB-INF/lib/dependency.jar", Collections.singletonMap(
+                "org/jenkinsci/plugins/dependency/DependencyJob.class",
+                newClass("org/jenkinsci/plugins/dependency/DependencyJob", "hudson/model/Job", cw -> { })));
+        final Map<String, byte[]> pluginClasses = new LinkedHashMap<>();
+        pluginClasses.put("org/jenkinsci/plugins/test/MyJob.class",
+                newClass("org/jenkinsci/plugins/test/MyJob", "org/jenkinsci/plugins/dependency/DependencyJob",
+                        cw -> {
+                            final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "call", "()V", null, null);
+                            mv.visitCode();
+                            mv.visitInsn(Opcodes.ACONST_NULL);
+                            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "org/jenkinsci/plugins/test/MyJob", "getOldThing", "()V", false);
+                            mv.visitInsn(Opcodes.ACONST_NULL);
+                            mv.visitFieldInsn(Opcodes.GETFIELD, "org/jenkinsci/plugins/dependency/DependencyJob", "oldField", "I");
+                            mv.visitInsn(Opcodes.POP);
+                            mv.visitInsn(Opcodes.RETURN);
+                            mv.visitMaxs(0, 0);
+                            mv.visitEnd();
+                        }));
+        final File plugin = newWar("test.hpi", "WEB-INF/lib/test.jar", pluginClasses);
+
+        final DeprecatedApi deprecatedApi = new DeprecatedApi();
+        deprecatedApi.analyze(core, Runnable::run);
+        deprecatedApi.freeze();
+        final DeprecatedUsage dependencyUsage = new DeprecatedUsage("dependency", "1.0", deprecatedApi, false);
+        dependencyUsage.analyze(dependency);
+        final DeprecatedUsage deprecatedUsage = new DeprecatedUsage("test", "1.0", deprecatedApi, false);
+        deprecatedUsage.analyze(plugin);
+        // the classes of the dependency are not known while scanning the plugin
+        assertEquals(Collections.emptySet(), deprecatedUsage.getMethods());
+
+        // also through a cached result, which holds the references to resolve and the classes of the plugin
+        final ScanResultCache scanResultCache = new ScanResultCache(temporaryFolder.newFolder("cache"),
+                deprecatedApi, false);
+        final JenkinsFile pluginFile = new JenkinsFile("test", "1.0", "http://localhost/test.hpi", null,
+                DigestUtils.getSha256Digest(), DigestUtils.sha256("test"));
+        scanResultCache.save(pluginFile, deprecatedUsage);
+        final DeprecatedUsage cachedUsage = scanResultCache.load(pluginFile);
+
+        for (DeprecatedUsage usage : new DeprecatedUsage[] {deprecatedUsage, cachedUsage}) {
+            usage.resolveThroughPlugins(new PluginClassHierarchy(Arrays.asList(dependencyUsage, usage)));
+            assertEquals(Collections.singleton("hudson/model/Job#getOldThing()V"), usage.getMethods());
+            assertEquals(Collections.singleton("hudson/model/Job#oldField"), usage.getFields());
+        }
+    }
+
+    @Test
+    public void testMemoryMapped() throws IOException {
+        final Map<String, byte[]> coreClasses = new LinkedHashMap<>();
+        coreClasses.put("hudson/model/Job.class", newClass("hudson/model/Job", "java/lang/Object", cw -> {
+            cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_DEPRECATED, "getOldThing", "()V", null, null);
+        }));
+        final File core = newWar("jenkins.war", "WEB-INF/lib/jenkins-core.jar", coreClasses);
+        final Map<String, byte[]> pluginClasses = new LinkedHashMap<>();
+        pluginClasses.put("org/jenkinsci/plugins/test/MyJob.class",
+                newClass("org/jenkinsci/plugins/test/MyJob", "hudson/model/Job", cw -> {
+                    final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "call", "()V", null, null);
+                    mv.visitCode();
+                    mv.visitVarInsn(Opcodes.ALOAD, 0);
+                    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "org/jenkinsci/plugins/test/MyJob", "getOldThing", "()V", false);
+                    mv.visitInsn(Opcodes.RETURN);
+                    mv.visitMaxs(0, 0);
+                    mv.visitEnd();
+                }));
+        final File plugin = newWar("test.hpi", "WEB-INF/lib/test.jar", pluginClasses);
+
+        Options.get().memoryMap = true;
+        try {
+            final DeprecatedApi deprecatedApi = new DeprecatedApi();
+            deprecatedApi.analyze(core, Runnable::run);
+            deprecatedApi.freeze();
+            final DeprecatedUsage deprecatedUsage = new DeprecatedUsage("test", "1.0", deprecatedApi, false);
+            deprecatedUsage.analyze(plugin);
+
+            assertEquals(Collections.singleton("hudson/model/Job#getOldThing()V"), deprecatedUsage.getMethods());
+        } finally {
+            Options.get().memoryMap = false;
+        }
+    }
+
+    @Test
+    public void testPluginLibraries() throws IOException {
+        final Map<String, byte[]> coreClasses = new LinkedHashMap<>();
+        coreClasses.put("hudson/model/Job.class", newClass("hudson/model/Job", "java/lang/Object", cw -> {
+            cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_DEPRECATED, "getOldThing", "()V", null, null);
+        }));
+        final File core = newWar("jenkins.war", "WEB-INF/lib/jenkins-core.jar", coreClasses);
+
+        // the jars of the plugin are read by separate subtasks, the hierarchy going through both
+        final Map<String, Map<String, byte[]>> jars = new LinkedHashMap<>();
+        jars.put("WEB-INF/lib/library.jar", Collections.singletonMap("org/jenkinsci/library/LibraryJob.class",
+                newClass("org/jenkinsci/library/LibraryJob", "hudson/model/Job", cw -> { })));
+        jars.put("WEB-INF/lib/test.jar", Collections.singletonMap("org/jenkinsci/plugins/test/MyJob.class",
+                newClass("org/jenkinsci/plugins/test/MyJob", "org/jenkinsci/library/LibraryJob", cw -> {
+                    final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "call", "()V", null, null);
+                    mv.visitCode();
+                    mv.visitVarInsn(Opcodes.ALOAD, 0);
+                    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "org/jenkinsci/plugins/test/MyJob", "getOldThing", "()V", false);
+                    mv.visitInsn(Opcodes.RETURN);
+                    mv.visitMaxs(0, 0);
+                    mv.visitEnd();
+                })));
+        final File plugin = newWar("test.hpi", jars);
+
+        final DeprecatedApi deprecatedApi = new DeprecatedApi();
+        deprecatedApi.analyze(core, Runnable::run);
+        deprecatedApi.freeze();
+        final DeprecatedUsage deprecatedUsage = new DeprecatedUsage("test", "1.0", deprecatedApi, true);
+        deprecatedUsage.analyze(plugin);
+
+        assertEquals(Collections.singleton("hudson/model/Job#getOldThing()V"), deprecatedUsage.getMethods());
+    }
+
+    @Test
+    public void testHierarchyCycle() throws IOException {
+        final Map<String, byte[]> coreClasses = new LinkedHashMap<>();
+        coreClasses.put("hudson/model/Job.class", newClass("hudson/model/Job", "java/lang/Object", cw -> {
+            cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_DEPRECATED, "getOldThing", "()V", null, null);
+        }));
+        final File core = newWar("jenkins.war", "WEB-INF/lib/jenkins-core.jar", coreClasses);
+
+        // inconsistent classes, as may be found in broken plugins
+        final Map<String, byte[]> pluginClasses = new LinkedHashMap<>();
+        pluginClasses.put("hudson/plugins/test/A.class",
+                newClass("hudson/plugins/test/A", "hudson/plugins/test/B", cw -> { }));
+        pluginClasses.put("hudson/plugins/test/B.class", newClass("hudson/plugins/test/B", "hudson/plugins/test/A",
+                cw -> { }, "hudson/model/Job"));
+        pluginClasses.put("hudson/plugins/test/Caller.class",
+                newClass("hudson/plugins/test/Caller", "java/lang/Object", cw -> {
+                    final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "call", "()V", null, null);
+                    mv.visitCode();
+                    mv.visitInsn(Opcodes.ACONST_NULL);
+                    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "hudson/plugins/test/A", "getOldThing", "()V", false);
+                    mv.visitInsn(Opcodes.RETURN);
+                    mv.visitMaxs(0, 0);
+                    mv.visitEnd();
+                }));
+        final File plugin = newWar("test.hpi", "WEB-INF/lib/test.jar", pluginClasses);
+
+        final DeprecatedApi deprecatedApi = new DeprecatedApi();
+        deprecatedApi.analyze(core, Runnable::run);
+        deprecatedApi.freeze();
+        final DeprecatedUsage deprecatedUsage = new DeprecatedUsage("test", "1.0", deprecatedApi, false);
+        deprecatedUsage.analyze(plugin);
+
+        assertEquals(Collections.singleton("hudson/model/Job#getOldThing()V"), deprecatedUsage.getMethods());
+    }
+
+    @Test
+    public void testIncomplete() throws IOException {
+        final Map<String, byte[]> coreClasses = new LinkedHashMap<>();
+        coreClasses.put("hudson/model/Job.class", newClass("hudson/model/Job", "java/lang/Object", cw -> { }));
+        final File core = newWar("jenkins.war", "WEB-INF/lib/jenkins-core.jar", coreClasses);
+        final Map<String, byte[]> pluginClasses = new LinkedHashMap<>();
+        pluginClasses.put("org/jenkinsci/plugins/test/MyJob.class",
+                newClass("org/jenkinsci/plugins/test/MyJob", "hudson/model/Job", cw -> { }));
+        // a class file version which is not supported by ASM
+        final byte[] futureClass = newClass("org/jenkinsci/plugins/test/Future", "java/lang/Object", cw -> { });
+        futureClass[7] = 99;
+        pluginClasses.put("org/jenkinsci/plugins/test/Future.class", futureClass);
+        final File plugin = newWar("test.hpi", "WEB-INF/lib/test.jar", pluginClasses);
+
+        final DeprecatedApi deprecatedApi = new DeprecatedApi();
+        deprecatedApi.analyze(core, Runnable::run);
+        deprecatedApi.freeze();
+        final DeprecatedUsage deprecatedUsage = new DeprecatedUsage("test", "1.0", deprecatedApi, false);
+        deprecatedUsage.analyze(plugin);
+
+        assertTrue(deprecatedUsage.isIncomplete());
+    }
+
+    @Test
+    public void testDuplicateCoreClass() throws IOException {
+        // the same class in two jars of core, with different supertypes: the first jar of the war wins
+        final Map<String, Map<String, byte[]>> jars = new LinkedHashMap<>();
+        jars.put("WEB-INF/lib/first.jar", Collections.singletonMap("hudson/model/Duplicate.class",
+                newClass("hudson/model/Duplicate", "hudson/model/First", cw -> { })));
+        jars.put("WEB-INF/lib/second.jar", Collections.singletonMap("hudson/model/Duplicate.class",
+                newClass("hudson/model/Duplicate", "hudson/model/Second", cw -> { })));
+        final File core = newWar("jenkins.war", jars);
+
+        for (int i = 0; i < 10; i++) {
+            final DeprecatedApi deprecatedApi = new DeprecatedApi();
+            deprecatedApi.analyze(core, ForkJoinPool.commonPool());
+            assertArrayEquals(new String[] {"hudson/model/First"},
+                    deprecatedApi.getSuperTypesByClass().get("hudson/model/Duplicate"));
+        }
+    }
+
+    private interface ClassContent {
+        void visit(ClassWriter classWriter);
+    }
+
+    private static byte[] newClass(String name, String superName, ClassContent content, String... interfaces) {
+        final ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, interfaces);
+        content.visit(classWriter);
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private File newWar(String warName, String jarName, Map<String, byte[]> classes) throws IOException {
+        return newWar(warName, Collections.singletonMap(jarName, classes));
+    }
+
+    private File newWar(String warName, Map<String, Map<String, byte[]>> jars) throws IOException {
+        final File war = new File(temporaryFolder.getRoot(), warName);
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(war))) {
+            for (Map.Entry<String, Map<String, byte[]>> jar : jars.entrySet()) {
+                final byte[] jarBytes = newJar(jar.getValue());
+                final ZipEntry jarEntry = new ZipEntry(jar.getKey());
+                // stored without compression, so that a memory-mapped war reads the jar in place
+                jarEntry.setMethod(ZipEntry.STORED);
+                jarEntry.setSize(jarBytes.length);
+                final CRC32 crc = new CRC32();
+                crc.update(jarBytes);
+                jarEntry.setCrc(crc.getValue());
+                output.putNextEntry(jarEntry);
+                output.write(jarBytes);
+                output.closeEntry();
+            }
+        }
+        return war;
+    }
+
+    private static byte[] newJar(Map<String, byte[]> classes) throws IOException {
+        final ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (ZipOutputStream output = new ZipOutputStream(jar)) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                output.putNextEntry(new ZipEntry(entry.getKey()));
+                output.write(entry.getValue());
+                output.closeEntry();
+            }
+        }
+        return jar.toByteArray();
+    }
+}
@@ -0,0 +1,157 @@
+package org.jenkinsci.deprecatedusage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DownloaderTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final byte[] content = new byte[100_000];
+    private final FileHandler fileHandler = new FileHandler();
+    private HttpServer server;
+    private Downloader downloader;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(1).nextBytes(content);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/test.hpi", fileHandler);
+        server.start();
+        downloader = new Downloader(1, 2);
+    }
+
+    @After
+    public void tearDown() {
+        downloader.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testResumedAfterPrematureEof() throws Exception {
+        fileHandler.truncateNextResponse = true;
+        final JenkinsFile plugin = newPlugin();
+
+        // the retry only downloads what the failed attempt did not
+        assertDownloaded(plugin);
+        assertEquals(Arrays.asList(null, "bytes=" + content.length / 2 + '-'), fileHandler.ranges);
+    }
+
+    @Test
+    public void testRangeIgnored() throws Exception {
+        final JenkinsFile plugin = newPlugin();
+        writePartFile(plugin, Arrays.copyOf(content, 1000));
+        fileHandler.ignoreRange = true;
+
+        // the server sends the whole file, which replaces the part file
+        assertDownloaded(plugin);
+        assertEquals(Collections.singletonList("bytes=1000-"), fileHandler.ranges);
+    }
+
+    @Test
+    public void testPartFileTooLong() throws Exception {
+        final JenkinsFile plugin = newPlugin();
+        writePartFile(plugin, new byte[content.length + 1]);
+
+        // 416 for the range, and the whole file without range
+        assertDownloaded(plugin);
+        assertEquals(Arrays.asList("bytes=" + (content.length + 1) + '-', null), fileHandler.ranges);
+    }
+
+    @Test
+    public void testPartFileOfAnotherVersion() throws Exception {
+        final JenkinsFile plugin = newPlugin();
+        writePartFile(plugin, new byte[1000]);
+
+        // the digest of the resumed file does not match, so the whole file is downloaded again
+        assertDownloaded(plugin);
+        assertEquals(Arrays.asList("bytes=1000-", null), fileHandler.ranges);
+    }
+
+    private JenkinsFile newPlugin() {
+        final JenkinsFile plugin = new JenkinsFile("test", "1.0",
+                "http://localhost:" + server.getAddress().getPort() + "/test.hpi", null,
+                DigestUtils.getSha256Digest(), DigestUtils.sha256(content));
+        plugin.setFile(new File(temporaryFolder.getRoot(), "test/1.0/test.hpi"));
+        return plugin;
+    }
+
+    private static void writePartFile(JenkinsFile plugin, byte[] part) throws IOException {
+        final File partFile = new File(plugin.getFile().getPath() + ".part");
+        assertTrue(partFile.getParentFile().mkdirs());
+        Files.write(partFile.toPath(), part);
+    }
+
+    private void assertDownloaded(JenkinsFile plugin) throws InterruptedException, ExecutionException, IOException {
+        assertSame(plugin, downloader.synchronize(plugin).get());
+        assertArrayEquals(content, Files.readAllBytes(plugin.getFile().toPath()));
+        assertFalse(new File(plugin.getFile().getPath() + ".part").exists());
+        assertTrue(new File(plugin.getFile().getPath() + ".verified").exists());
+        assertTrue(plugin.isFileSynchronized());
+    }
+
+    /**
+     * Serves the content with ranges, as the mirrors of the update center.
+     */
+    private class FileHandler implements HttpHandler {
+        private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean truncateNextResponse;
+        private volatile boolean ignoreRange;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            ranges.add(range);
+            int start = 0;
+            if (range != null && !ignoreRange) {
+                start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                if (start >= content.length) {
+                    exchange.sendResponseHeaders(416, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Range",
+                        "bytes " + start + '-' + (content.length - 1) + '/' + content.length);
+            }
+            final int length = content.length - start;
+            exchange.sendResponseHeaders(start > 0 ? 206 : 200, length);
+            final OutputStream body = exchange.getResponseBody();
+            if (truncateNextResponse) {
+                truncateNextResponse = false;
+                body.write(content, start, length / 2);
+                body.flush();
+                // the connection is closed before the end of the response
+                exchange.close();
+                return;
+            }
+            body.write(content, start, length);
+            exchange.close();
+        }
+    }
+}
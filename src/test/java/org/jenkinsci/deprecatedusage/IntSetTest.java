@@ -0,0 +1,40 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntSetTest {
+    @Test
+    public void testAdd() {
+        final IntSet intSet = new IntSet();
+        final TreeSet<Integer> expected = new TreeSet<>();
+        final Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            final int value = random.nextInt(500);
+            assertEquals(expected.add(value), intSet.add(value));
+        }
+        assertEquals(expected.size(), intSet.size());
+        int index = 0;
+        for (int value : expected) {
+            assertEquals(value, intSet.get(index++));
+        }
+        for (int value = -1; value <= 500; value++) {
+            assertEquals(expected.contains(value), intSet.contains(value));
+        }
+
+        final IntSet other = new IntSet();
+        assertTrue(other.isEmpty());
+        other.add(1000);
+        other.add(intSet.get(0));
+        intSet.addAll(other);
+        assertEquals(expected.size() + 1, intSet.size());
+        assertTrue(intSet.contains(1000));
+        assertFalse(intSet.contains(999));
+    }
+}
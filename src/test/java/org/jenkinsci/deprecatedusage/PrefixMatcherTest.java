@@ -0,0 +1,36 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrefixMatcherTest {
+    @Test
+    public void testMatches() {
+        PrefixMatcher matcher = new PrefixMatcher(Arrays.asList("hudson/util/", "hudson/model/Hudson",
+                "hudson/util/Secret", "jenkins/model/Jenkins", "jenkins/model/Jenkins$1", "org/kohsuke/stapler/"));
+        assertTrue(matcher.matches("hudson/util/Secret"));
+        assertTrue(matcher.matches("hudson/util/RunList"));
+        assertTrue(matcher.matches("hudson/model/Hudson"));
+        assertTrue(matcher.matches("hudson/model/Hudson$CloudList"));
+        assertTrue(matcher.matches("jenkins/model/Jenkins$2"));
+        assertTrue(matcher.matches("org/kohsuke/stapler/StaplerRequest"));
+        assertFalse(matcher.matches("hudson/utils/Foo"));
+        assertFalse(matcher.matches("hudson/model/AbstractProject"));
+        assertFalse(matcher.matches("hudson/"));
+        assertFalse(matcher.matches("a"));
+        assertFalse(matcher.matches("zzz"));
+        assertFalse(matcher.matches(""));
+    }
+
+    @Test
+    public void testEmptyPrefixes() {
+        assertFalse(new PrefixMatcher(Collections.emptyList()).matches("hudson/util/Secret"));
+        // an empty line in a file matches all classes
+        assertTrue(new PrefixMatcher(Arrays.asList("hudson/util/", "")).matches("jenkins/model/Jenkins"));
+    }
+}
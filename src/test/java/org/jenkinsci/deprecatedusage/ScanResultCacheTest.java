@@ -0,0 +1,144 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScanResultCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        final File cacheDirectory = temporaryFolder.newFolder("cache");
+        final JenkinsFile plugin = newPlugin("p1");
+        final DeprecatedApi deprecatedApi = newDeprecatedApi();
+        final DeprecatedUsage deprecatedUsage = new DeprecatedUsage("p1", "1.0", deprecatedApi, false);
+        deprecatedUsage.addUsages(newIds(deprecatedApi, "hudson/model/Old"),
+                newIds(deprecatedApi, "hudson/model/Job#getOldThing()V", "hudson/model/Job#getOtherThing()V"),
+                newIds(deprecatedApi));
+        new ScanResultCache(cacheDirectory, deprecatedApi, false).save(plugin, deprecatedUsage);
+
+        // read by the next run, where the same names have other ids
+        final DeprecatedApi nextDeprecatedApi = newDeprecatedApi();
+        newIds(nextDeprecatedApi, "hudson/model/Job#getOtherThing()V", "hudson/model/Other");
+        final DeprecatedUsage loadedUsage = new ScanResultCache(cacheDirectory, nextDeprecatedApi, false).load(plugin);
+        assertEquals(Collections.singleton("hudson/model/Old"), loadedUsage.getClasses());
+        assertEquals(new HashSet<>(Arrays.asList("hudson/model/Job#getOldThing()V", "hudson/model/Job#getOtherThing()V")),
+                loadedUsage.getMethods());
+        assertEquals(Collections.emptySet(), loadedUsage.getFields());
+    }
+
+    @Test
+    public void testDamagedDictionary() throws IOException {
+        final File cacheDirectory = temporaryFolder.newFolder("cache");
+        final JenkinsFile plugin = newPlugin("p1");
+        final DeprecatedApi deprecatedApi = newDeprecatedApi();
+        final DeprecatedUsage deprecatedUsage = new DeprecatedUsage("p1", "1.0", deprecatedApi, false);
+        deprecatedUsage.addUsages(newIds(deprecatedApi, "hudson/model/Old"), newIds(deprecatedApi),
+                newIds(deprecatedApi));
+        new ScanResultCache(cacheDirectory, deprecatedApi, false).save(plugin, deprecatedUsage);
+        try (Stream<Path> dictionaries = Files.find(cacheDirectory.toPath(), 3,
+                (path, attributes) -> path.getFileName().toString().equals("dictionary.bin"))) {
+            Files.write(dictionaries.findFirst().get(), "damaged".getBytes(StandardCharsets.UTF_8));
+        }
+
+        // the results which cannot be read without their dictionary are discarded
+        final ScanResultCache scanResultCache = new ScanResultCache(cacheDirectory, newDeprecatedApi(), false);
+        assertNull(scanResultCache.load(plugin));
+        assertFalse(scanResultCache.contains(plugin));
+    }
+
+    @Test
+    public void testPreviousFormats() throws IOException {
+        final File cacheDirectory = temporaryFolder.newFolder("cache");
+        final File previousFormat = new File(cacheDirectory, "usages/previous");
+        assertTrue(previousFormat.mkdirs());
+        Files.write(new File(previousFormat, "result.json").toPath(), "{}".getBytes(StandardCharsets.UTF_8));
+        final JenkinsFile plugin = newPlugin("p1");
+        final DeprecatedApi deprecatedApi = newDeprecatedApi();
+        new ScanResultCache(cacheDirectory, deprecatedApi, false)
+                .save(plugin, new DeprecatedUsage("p1", "1.0", deprecatedApi, false));
+
+        final ScanResultCache scanResultCache = new ScanResultCache(cacheDirectory, newDeprecatedApi(), false);
+        assertFalse(previousFormat.exists());
+        assertTrue(scanResultCache.contains(plugin));
+    }
+
+    @Test
+    public void testUnusedFingerprints() throws IOException {
+        final File cacheDirectory = temporaryFolder.newFolder("cache");
+        final JenkinsFile plugin = newPlugin("p1");
+        // the deprecated APIs of 4 versions of core, used one after the other
+        final List<Path> directories = new ArrayList<>();
+        for (int version = 0; version < 4; version++) {
+            final DeprecatedApi deprecatedApi = newDeprecatedApi("hudson/model/Job#getOldThing" + version + "()V");
+            new ScanResultCache(cacheDirectory, deprecatedApi, false)
+                    .save(plugin, new DeprecatedUsage("p1", "1.0", deprecatedApi, false));
+            try (Stream<Path> paths = Files.list(cacheDirectory.toPath().resolve("usages"))) {
+                final Path directory = paths.filter(path -> !directories.contains(path)).findFirst().get();
+                Files.setLastModifiedTime(directory.resolve("format"), FileTime.fromMillis(version * 1000L));
+                directories.add(directory);
+            }
+        }
+
+        // the directory of the first version is deleted, being the oldest besides the current one and the last 2
+        new ScanResultCache(cacheDirectory, newDeprecatedApi("hudson/model/Job#getOldThing3()V"), false);
+        assertFalse(Files.exists(directories.get(0)));
+        assertTrue(Files.exists(directories.get(1)));
+        assertTrue(Files.exists(directories.get(2)));
+        assertTrue(Files.exists(directories.get(3)));
+
+        // using the second version again keeps it rather than the third one
+        Files.setLastModifiedTime(directories.get(3).resolve("format"), FileTime.fromMillis(3000L));
+        new ScanResultCache(cacheDirectory, newDeprecatedApi("hudson/model/Job#getOldThing1()V"), false);
+        new ScanResultCache(cacheDirectory, newDeprecatedApi("hudson/model/Job#getOldThing4()V"), false);
+        assertTrue(Files.exists(directories.get(1)));
+        assertFalse(Files.exists(directories.get(2)));
+        assertTrue(Files.exists(directories.get(3)));
+    }
+
+    private static DeprecatedApi newDeprecatedApi() {
+        return newDeprecatedApi("hudson/model/Job#getOldThing()V");
+    }
+
+    private static DeprecatedApi newDeprecatedApi(String method) {
+        final DeprecatedApi deprecatedApi = new DeprecatedApi();
+        deprecatedApi.addClasses(Collections.singletonList("hudson/model/Old"));
+        deprecatedApi.getMethods().add(method);
+        deprecatedApi.freeze();
+        return deprecatedApi;
+    }
+
+    private static IntSet newIds(DeprecatedApi deprecatedApi, String... names) {
+        final IntSet ids = new IntSet();
+        for (String name : names) {
+            ids.add(deprecatedApi.getApiDictionary().getId(name));
+        }
+        return ids;
+    }
+
+    private static JenkinsFile newPlugin(String name) {
+        return new JenkinsFile(name, "1.0", "http://localhost/" + name + ".hpi", null, DigestUtils.getSha256Digest(),
+                DigestUtils.sha256(name));
+    }
+}
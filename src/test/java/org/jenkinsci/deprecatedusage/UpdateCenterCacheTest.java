@@ -0,0 +1,92 @@
+package org.jenkinsci.deprecatedusage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class UpdateCenterCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<String> ifNoneMatches = Collections.synchronizedList(new ArrayList<>());
+    private volatile String etag = "\"1\"";
+    private volatile String pluginVersion = "1.0";
+    private final AtomicInteger notModifiedCount = new AtomicInteger();
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/update-center.json", this::handle);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testRevalidated() throws IOException {
+        final UpdateCenterCache updateCenterCache = new UpdateCenterCache(temporaryFolder.newFolder("cache"));
+        final URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/update-center.json");
+
+        assertEquals(Arrays.asList("core 2.1", "p1 1.0", "p2 2.0"), parse(updateCenterCache, url));
+        // the second fetch is not modified, and parsed from the cached document
+        assertEquals(Arrays.asList("core 2.1", "p1 1.0", "p2 2.0"), parse(updateCenterCache, url));
+        assertEquals(1, notModifiedCount.get());
+
+        // a new document replaces the cached one
+        etag = "\"2\"";
+        pluginVersion = "1.1";
+        assertEquals(Arrays.asList("core 2.1", "p1 1.1", "p2 2.0"), parse(updateCenterCache, url));
+        assertEquals(Arrays.asList("core 2.1", "p1 1.1", "p2 2.0"), parse(updateCenterCache, url));
+        assertEquals(2, notModifiedCount.get());
+        assertEquals(Arrays.asList(null, "\"1\"", "\"1\"", "\"2\""), ifNoneMatches);
+    }
+
+    private static List<String> parse(UpdateCenterCache updateCenterCache, URL url) throws IOException {
+        final List<String> files = new ArrayList<>();
+        updateCenterCache.parse(url, core -> files.add(core.getName() + ' ' + core.getVersion()),
+                plugin -> files.add(plugin.getName() + ' ' + plugin.getVersion()));
+        return files;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        final String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        ifNoneMatches.add(ifNoneMatch);
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(ifNoneMatch)) {
+            notModifiedCount.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        final byte[] document = ("updateCenter.post(\n"
+                + "{\"core\":{\"name\":\"core\",\"version\":\"2.1\",\"url\":\"http://localhost/jenkins.war\"},"
+                + "\"plugins\":{"
+                + "\"p1\":{\"name\":\"p1\",\"version\":\"" + pluginVersion + "\",\"url\":\"http://localhost/p1.hpi\"},"
+                + "\"p2\":{\"name\":\"p2\",\"version\":\"2.0\",\"url\":\"http://localhost/p2.hpi\"}}}\n"
+                + ");").getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, document.length);
+        exchange.getResponseBody().write(document);
+        exchange.close();
+    }
+}
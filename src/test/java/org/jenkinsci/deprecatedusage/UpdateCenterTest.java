@@ -0,0 +1,39 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class UpdateCenterTest {
+    @Test
+    public void testParse() {
+        final String json = "updateCenter.post(\n"
+                + "{\"connectionCheckUrl\":\"http://www.google.com/\","
+                + "\"core\":{\"name\":\"core\",\"version\":\"2.1\",\"url\":\"http://localhost/jenkins.war\","
+                + "\"sha256\":\"UtwDAykTSs1YhzaHQelNAPjBB/ZCVDLf61D29tHEtZc=\"},"
+                + "\"deprecations\":{\"p1\":{\"url\":\"http://localhost/p1\"}},"
+                + "\"plugins\":{"
+                + "\"p1\":{\"name\":\"p1\",\"version\":\"1.0\",\"url\":\"http://localhost/p1.hpi\",\"wiki\":\"w\","
+                + "\"dependencies\":[{\"name\":\"p2\",\"optional\":false}]},"
+                + "\"p2\":{\"name\":\"p2\",\"version\":\"2.0\",\"url\":\"http://localhost/p2.hpi\","
+                + "\"sha1\":\"2jmj7l5rSw0yVb/vlWAYkK/YBwk=\"}},"
+                + "\"signature\":{\"certificates\":[\"a\",\"b\"]},\"updateCenterVersion\":\"1\",\"warnings\":[]}\n"
+                + ");";
+        final List<JenkinsFile> cores = new ArrayList<>();
+        final List<JenkinsFile> plugins = new ArrayList<>();
+        UpdateCenter.parse(new StringReader(json), cores::add, plugins::add);
+
+        assertEquals(1, cores.size());
+        assertEquals("2.1", cores.get(0).getVersion());
+        assertEquals("52dc030329134acd5887368741e94d00f8c107f6425432dfeb50f6f6d1c4b597", cores.get(0).getDigest());
+        assertEquals(2, plugins.size());
+        assertEquals(Arrays.asList("p1", "p2"), Arrays.asList(plugins.get(0).getName(), plugins.get(1).getName()));
+        assertEquals("w", plugins.get(0).getWiki());
+        assertEquals("http://localhost/p2.hpi", plugins.get(1).getUrl());
+    }
+}
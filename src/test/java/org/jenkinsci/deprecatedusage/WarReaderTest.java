@@ -0,0 +1,52 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class WarReaderTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testEntriesClosed() throws IOException {
+        final File war = temporaryFolder.newFile("test.hpi");
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(war))) {
+            for (String name : new String[] {"WEB-INF/classes/A.class", "WEB-INF/classes/B.class"}) {
+                output.putNextEntry(new ZipEntry(name));
+                output.write(new byte[1000]);
+                output.closeEntry();
+            }
+        }
+        for (boolean memoryMap : new boolean[] {false, true}) {
+            Options.get().memoryMap = memoryMap;
+            try (WarReader warReader = new WarReader(war, false)) {
+                assertEquals("WEB-INF/classes/A.class", warReader.nextClass());
+                final InputStream input = warReader.getInputStream();
+                assertEquals(0, input.read());
+                // the stream of an entry, and its inflater, are released when moving to the next entry
+                assertEquals("WEB-INF/classes/B.class", warReader.nextClass());
+                try {
+                    input.read();
+                    fail("stream of the previous entry not closed");
+                } catch (IOException expected) {
+                    // closed
+                }
+                assertNull(warReader.nextClass());
+            } finally {
+                Options.get().memoryMap = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WorkCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testEvict() throws IOException {
+        final File work = temporaryFolder.newFolder("work");
+        final File referenced = newVersion(work, "p1", "2.0", 1, 100);
+        final File oldVersion = newVersion(work, "p1", "1.0", 1, 100);
+        final File oldPlugin = newVersion(work, "p2", "1.0", 1, 50);
+        final File recentVersion = newVersion(work, "p3", "1.0", 1, 1);
+        final File cache = newVersion(work, ".cache", "usages", 1, 100);
+        final JenkinsFile referencedFile = new JenkinsFile("p1", "2.0", "http://localhost/p1.hpi", null, null, null);
+        referencedFile.setFile(new File(referenced, "p1.hpi"));
+
+        new WorkCache(work, cache.getParentFile()).evict(Collections.singleton(referencedFile), 30, 0);
+        assertTrue(referenced.exists());
+        assertFalse(oldVersion.exists());
+        assertFalse(oldPlugin.getParentFile().exists());
+        assertTrue(recentVersion.exists());
+        assertTrue(cache.exists());
+
+        // least recently analyzed first, while the size of the work directory is above 2 MB
+        final File otherVersion = newVersion(work, "p4", "1.0", 1, 2);
+        new WorkCache(work, cache.getParentFile()).evict(Collections.singleton(referencedFile), 0, 2);
+        assertTrue(referenced.exists());
+        assertFalse(otherVersion.exists());
+        assertTrue(recentVersion.exists());
+    }
+
+    private static File newVersion(File work, String name, String version, int megabytes, int daysSinceAnalysis)
+            throws IOException {
+        final File directory = new File(new File(work, name), version);
+        assertTrue(directory.mkdirs());
+        Files.write(new File(directory, name + ".hpi").toPath(), new byte[megabytes * 1024 * 1024]);
+        // the time of the directory itself is the one of the last file created in it, not of the analysis
+        final File analyzedFile = new File(directory, JenkinsFile.ANALYZED_FILE_NAME);
+        assertTrue(analyzedFile.createNewFile());
+        Files.setLastModifiedTime(analyzedFile.toPath(),
+                FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(daysSinceAnalysis)));
+        return directory;
+    }
+}
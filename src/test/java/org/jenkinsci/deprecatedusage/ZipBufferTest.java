@@ -0,0 +1,63 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ZipBufferTest {
+    @Test
+    public void testEntries() throws IOException {
+        final byte[] deflated = "deflated content, deflated content, deflated content".getBytes(StandardCharsets.UTF_8);
+        final byte[] stored = "stored content".getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream output = new ZipOutputStream(bytes)) {
+            output.putNextEntry(new ZipEntry("hudson/model/Hudson.class"));
+            output.write(deflated);
+            output.closeEntry();
+            final ZipEntry storedEntry = new ZipEntry("META-INF/é.txt");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            final CRC32 crc = new CRC32();
+            crc.update(stored);
+            storedEntry.setCrc(crc.getValue());
+            output.putNextEntry(storedEntry);
+            output.write(stored);
+            output.closeEntry();
+            output.setComment("comment");
+        }
+        // the archive does not have to start at the beginning of the buffer
+        final ByteBuffer buffer = ByteBuffer.allocate(bytes.size() + 3);
+        buffer.position(3);
+        buffer.put(bytes.toByteArray());
+        buffer.position(3);
+
+        final ZipBuffer zipBuffer = new ZipBuffer(buffer);
+        assertEquals(2, zipBuffer.size());
+        assertEquals("hudson/model/Hudson.class", zipBuffer.getName(0));
+        assertEquals(deflated.length, zipBuffer.getSize(0));
+        try (InputStream input = zipBuffer.getInputStream(0)) {
+            assertArrayEquals(deflated, IOUtils.toByteArray(input));
+        }
+        assertEquals("META-INF/é.txt", zipBuffer.getName(1));
+        try (InputStream input = zipBuffer.getInputStream(1)) {
+            assertArrayEquals(stored, IOUtils.toByteArray(input));
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void testNotZip() throws IOException {
+        new ZipBuffer(ByteBuffer.wrap(new byte[100]));
+    }
+}